@@ -0,0 +1,97 @@
+package com.vcorsi;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many lines per second can be parsed.
+ * 
+ * @author vladimiro
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FormatBenchmark {
+
+	private static final int NUM_OF_LINES = 100000;
+
+	private final Format format = new Format();
+	private String[] lines;
+	private File file;
+
+	@Setup
+	public void setup() throws IOException {
+		final Random random = new Random(42);
+		lines = new String[NUM_OF_LINES];
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = format.format(BigDecimal.valueOf(
+					random.nextInt(100000000), 2));
+		}
+		file = File.createTempFile("ledger", ".txt");
+		try (PrintWriter pw = new PrintWriter(new FileWriter(file))) {
+			for (String line : lines) {
+				pw.println(line);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_OF_LINES)
+	public BigDecimal parse() {
+		BigDecimal last = null;
+		for (String line : lines) {
+			last = format.parse(line);
+		}
+		return last;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_OF_LINES)
+	public long parseCents() {
+		long total = 0;
+		for (String line : lines) {
+			total += format.parseCents(line);
+		}
+		return total;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_OF_LINES)
+	public long readFile() throws IOException {
+		long total = 0;
+		try (LedgerReader reader = new LedgerReader(file.toPath())) {
+			while (reader.nextLine()) {
+				total += reader.cents();
+			}
+		}
+		return total;
+	}
+
+}
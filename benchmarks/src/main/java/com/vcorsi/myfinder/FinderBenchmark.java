@@ -0,0 +1,121 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time each {@link Finder} takes to solve an input, and the time
+ * of the one chosen by {@link FinderFactory}, so that the factory choice can
+ * be checked against real timings.
+ * 
+ * @author vladimiro
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FinderBenchmark {
+
+	/**
+	 * How the amounts of the due payments are distributed between 0.01 and
+	 * the magnitude.
+	 */
+	public enum Distribution {
+		/**
+		 * all the amounts are equally likely
+		 */
+		UNIFORM,
+		/**
+		 * many small amounts and few large ones
+		 */
+		SKEWED
+	}
+
+	@Param({ "DP", "ROLLING_DP", "SUBSET", "MEET_IN_MIDDLE", "FACTORY" })
+	public String finder;
+
+	@Param({ "12", "20", "28" })
+	public int numOfPayments;
+
+	/**
+	 * largest due payment, in cents
+	 */
+	@Param({ "10000", "1000000" })
+	public long magnitude;
+
+	@Param({ "UNIFORM", "SKEWED" })
+	public Distribution distribution;
+
+	/**
+	 * when false no subset sums up to the transfer. The payments are
+	 * multiples of 6 plus a 2 and a 3, as in StrategySelector.calibrate(), so
+	 * their greatest common divisor is 1 and they reach every remainder
+	 * modulo 64: only a transfer equal to 1 modulo 6 has no solution, and the
+	 * finders have to search for it.
+	 */
+	@Param({ "true", "false" })
+	public boolean solvable;
+
+	private long[] payments;
+	private long transfer;
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(42);
+		payments = new long[numOfPayments];
+		transfer = 0;
+		for (int i = 0; i < payments.length; i++) {
+			final double r = random.nextDouble();
+			final double scaled = distribution == Distribution.UNIFORM ? r
+					: r * r * r;
+			payments[i] = 6 * Math.max(1, (long) (scaled * magnitude / 6));
+		}
+		payments[0] = 2;
+		payments[1] = 3;
+		for (int i = 0; i < payments.length; i += 3) {
+			transfer += payments[i];
+		}
+		// transfer is 2 modulo 6, the subsets reach 0, 2, 3 and 5 only
+		if (!solvable) {
+			transfer--;
+		}
+	}
+
+	@Benchmark
+	public BigDecimal[] find() {
+		return finder().find();
+	}
+
+	private Finder finder() {
+		final Amounts amounts = Amounts.of(payments);
+		switch (finder) {
+		case "DP":
+			return new DPFinder(amounts, transfer, new FinderConfig());
+		case "ROLLING_DP":
+			return new RollingDPFinder(amounts, transfer);
+		case "SUBSET":
+			return new SubsetFinder(amounts, transfer);
+		case "MEET_IN_MIDDLE":
+			return new MeetInMiddleFinder(amounts, transfer);
+		default:
+			return FinderFactory.finder(payments, transfer);
+		}
+	}
+
+}
@@ -0,0 +1,242 @@
+package com.vcorsi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.vcorsi.myfinder.Cents;
+
+/**
+ * Binary input file: the amounts of a text input file stored as columns of
+ * cents, loaded by mapping the file in memory instead of parsing it. The file
+ * starts with a header of 7 little endian longs:
+ *
+ * <pre>
+ * magic "ACCLEDG1", number of bank transfers, number of due payments,
+ * greatest common divisor, minimum, maximum and sum of the due payments
+ * </pre>
+ *
+ * followed by the column of the bank transfers and the column of the due
+ * payments, a little endian long per amount. The greatest common divisor is
+ * the one of the positive due payments, 1 if there is none. The summary in
+ * the header is checked against the columns when the file is read.
+ *
+ * @author vladimiro
+ *
+ */
+final class BinaryLedger {
+
+	static final int HEADER_BYTES = 7 * 8;
+
+	private static final byte[] MAGIC = "ACCLEDG1"
+			.getBytes(StandardCharsets.US_ASCII);
+	/**
+	 * bytes of a column mapped at once
+	 */
+	private static final int CHUNK_BYTES = 1 << 30;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final long[] transfers;
+	private final long[] payments;
+	private final long gcd;
+	private final long min;
+	private final long max;
+	private final long sum;
+
+	private BinaryLedger(final long[] transfers, final long[] payments,
+			final long gcd, final long min, final long max, final long sum) {
+		this.transfers = transfers;
+		this.payments = payments;
+		this.gcd = gcd;
+		this.min = min;
+		this.max = max;
+		this.sum = sum;
+	}
+
+	/**
+	 * @param transfers
+	 *            the bank transfers in cents
+	 * @param payments
+	 *            the due payments in cents, not empty
+	 * @throws ArithmeticException
+	 *             if the sum of the due payments does not fit in a long
+	 */
+	static BinaryLedger of(final long[] transfers, final long[] payments) {
+		long gcd = 0;
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		for (long p : payments) {
+			if (p > 0) {
+				gcd = gcd(gcd, p);
+			}
+			min = Math.min(min, p);
+			max = Math.max(max, p);
+		}
+		return new BinaryLedger(transfers, payments, gcd == 0 ? 1 : gcd, min,
+				max, Cents.sum(payments));
+	}
+
+	private static long gcd(long a, long b) {
+		while (b != 0) {
+			final long r = a % b;
+			a = b;
+			b = r;
+		}
+		return a;
+	}
+
+	/**
+	 * @return true if the file starts as a binary ledger
+	 * @throws IOException
+	 */
+	static boolean isBinary(final Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+			final ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+			for (int n = 0; n >= 0 && magic.hasRemaining();) {
+				n = channel.read(magic);
+			}
+			return !magic.hasRemaining() && Arrays.equals(magic.array(), MAGIC);
+		}
+	}
+
+	/**
+	 * Maps the file and copies its columns, in bulk, in the arrays given to
+	 * the finders.
+	 *
+	 * @throws IOException
+	 * @throws IllegalArgumentException
+	 *             if the file is not a valid binary ledger, or its header does
+	 *             not match its columns
+	 */
+	static BinaryLedger read(final Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+			final long size = channel.size();
+			if (size < HEADER_BYTES) {
+				throw invalid();
+			}
+			final ByteBuffer header = channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(
+					ByteOrder.LITTLE_ENDIAN);
+			final byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			final long numOfTransfers = header.getLong();
+			final long numOfPayments = header.getLong();
+			if (!Arrays.equals(magic, MAGIC) || numOfTransfers < 0
+					|| numOfPayments < 0
+					|| numOfTransfers > Integer.MAX_VALUE - 8
+					|| numOfPayments > Integer.MAX_VALUE - 8
+					|| size != HEADER_BYTES + 8 * (numOfTransfers + numOfPayments)) {
+				throw invalid();
+			}
+			final long gcd = header.getLong();
+			final long min = header.getLong();
+			final long max = header.getLong();
+			final long sum = header.getLong();
+			final BinaryLedger ledger;
+			try {
+				ledger = of(column(channel, HEADER_BYTES, (int) numOfTransfers),
+						column(channel, HEADER_BYTES + 8 * numOfTransfers,
+								(int) numOfPayments));
+			} catch (ArithmeticException e) {
+				throw invalid();
+			}
+			if (ledger.gcd != gcd || ledger.min != min || ledger.max != max
+					|| ledger.sum != sum) {
+				throw invalid();
+			}
+			return ledger;
+		}
+	}
+
+	private static long[] column(final FileChannel channel,
+			final long position, final int length) throws IOException {
+		final long[] result = new long[length];
+		for (int i = 0; i < length;) {
+			final int n = Math.min(length - i, CHUNK_BYTES / 8);
+			channel.map(FileChannel.MapMode.READ_ONLY, position + 8L * i,
+					8L * n).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer()
+					.get(result, i, n);
+			i += n;
+		}
+		return result;
+	}
+
+	private static IllegalArgumentException invalid() {
+		return new IllegalArgumentException("Invalid binary ledger");
+	}
+
+	/**
+	 * @throws IOException
+	 */
+	void write(final Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.put(MAGIC);
+			buffer.putLong(transfers.length);
+			buffer.putLong(payments.length);
+			buffer.putLong(gcd);
+			buffer.putLong(min);
+			buffer.putLong(max);
+			buffer.putLong(sum);
+			for (long[] column : new long[][] { transfers, payments }) {
+				for (long c : column) {
+					if (!buffer.hasRemaining()) {
+						flush(channel, buffer);
+					}
+					buffer.putLong(c);
+				}
+			}
+			flush(channel, buffer);
+		}
+	}
+
+	private static void flush(final FileChannel channel,
+			final ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * @return the bank transfers in cents
+	 */
+	long[] transfers() {
+		return transfers;
+	}
+
+	/**
+	 * @return the due payments in cents
+	 */
+	long[] payments() {
+		return payments;
+	}
+
+	long gcd() {
+		return gcd;
+	}
+
+	long min() {
+		return min;
+	}
+
+	long max() {
+		return max;
+	}
+
+	long sum() {
+		return sum;
+	}
+
+}
@@ -1,10 +1,11 @@
 package com.vcorsi;
 
 import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 
+import com.vcorsi.myfinder.Cents;
+
 /**
  * Class to format and parse BigDecimal according to the constraints of the
  * application: 2 decimal digits with a dot as decimal separator. E.g. 555555.55
@@ -32,23 +33,53 @@ class Format {
 	 * @throws IllegalArgumentException
 	 */
 	BigDecimal parse(final String line) {
+		return Cents.toBigDecimal(parseCents(line));
+	}
+
+	/**
+	 * @param line
+	 *            String representation of a number, as in
+	 *            {@link #parse(String)}
+	 * @return the parsed number as a number of cents
+	 * @throws IllegalArgumentException
+	 */
+	long parseCents(final String line) {
 		if (line == null) {
 			throw new NullPointerException("line cannot be null");
 		}
-		final String[] array = line.split("\\.");
-		if (array.length != 2) {
-			throw new IllegalArgumentException("Invalid line format");
+		final int length = line.length();
+		int i = 0;
+		boolean negative = false;
+		if (i < length && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+			negative = line.charAt(i) == '-';
+			i++;
 		}
-		if (array[1].length() != 2) {
+		final int dot = length - 3;
+		if (dot <= i || line.charAt(dot) != '.') {
 			throw new IllegalArgumentException("Invalid line format");
 		}
-		try {
-			final BigDecimal result = new BigDecimal(new BigInteger(
-					array[0].concat(array[1])), 2);
+		// accumulated as a negative number, which has the largest range
+		long result = 0;
+		for (; i < length; i++) {
+			if (i == dot) {
+				continue;
+			}
+			final int digit = line.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw new IllegalArgumentException("Invalid line format");
+			}
+			if (result < (Long.MIN_VALUE + digit) / 10) {
+				throw new IllegalArgumentException("Amount out of range");
+			}
+			result = result * 10 - digit;
+		}
+		if (negative) {
 			return result;
-		} catch (NumberFormatException e) {
-			throw new IllegalArgumentException("Invalid line format", e);
 		}
+		if (result == Long.MIN_VALUE) {
+			throw new IllegalArgumentException("Amount out of range");
+		}
+		return -result;
 	}
 
 	/**
@@ -63,4 +94,13 @@ class Format {
 		return decimalFormat.format(value);
 	}
 
+	/**
+	 * @param cents
+	 *            The value to be formatted, as a number of cents
+	 * @return a String representation of the numeric value.
+	 */
+	String format(final long cents) {
+		return format(Cents.toBigDecimal(cents));
+	}
+
 }
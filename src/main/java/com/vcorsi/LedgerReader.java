@@ -0,0 +1,158 @@
+package com.vcorsi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads an input file line by line, decoding each line straight from the
+ * bytes of the file into a number of cents: no String is created per line.
+ * Lines follow the same rules as {@link Format#parse(String)}: an optional
+ * sign, at least a digit, a "." and exactly 2 decimal digits. Lines can end
+ * with "\n" or "\r\n".
+ * 
+ * @author vladimiro
+ * 
+ */
+class LedgerReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private int lineNumber;
+	private boolean empty;
+	private long cents;
+
+	/**
+	 * @param path
+	 *            the file to read
+	 * @throws IOException
+	 */
+	LedgerReader(final Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		buffer.flip();
+	}
+
+	/**
+	 * Reads the next line.
+	 * 
+	 * @return false if the end of the file was reached
+	 * @throws IOException
+	 * @throws IllegalArgumentException
+	 *             if the line is neither empty nor a valid number
+	 */
+	boolean nextLine() throws IOException {
+		int b = read();
+		if (b < 0) {
+			return false;
+		}
+		lineNumber++;
+		if (b == '\r') {
+			b = read();
+		}
+		if (b == '\n' || b < 0) {
+			empty = true;
+			return true;
+		}
+		empty = false;
+		boolean negative = false;
+		if (b == '-' || b == '+') {
+			negative = b == '-';
+			b = read();
+		}
+		// accumulated as a negative number, which has the largest range
+		long result = 0;
+		int numOfDigits = 0;
+		for (; b >= '0' && b <= '9'; b = read()) {
+			result = accumulate(result, b - '0');
+			numOfDigits++;
+		}
+		if (numOfDigits == 0 || b != '.') {
+			throw invalid();
+		}
+		for (int i = 0; i < 2; i++) {
+			b = read();
+			if (b < '0' || b > '9') {
+				throw invalid();
+			}
+			result = accumulate(result, b - '0');
+		}
+		b = read();
+		if (b == '\r') {
+			b = read();
+		}
+		if (b != '\n' && b >= 0) {
+			throw invalid();
+		}
+		if (!negative && result == Long.MIN_VALUE) {
+			throw new IllegalArgumentException("Amount out of range at line "
+					+ lineNumber);
+		}
+		cents = negative ? result : -result;
+		return true;
+	}
+
+	/**
+	 * @return true if the last line read is empty
+	 */
+	boolean isEmpty() {
+		return empty;
+	}
+
+	/**
+	 * @return the number of cents of the last line read
+	 */
+	long cents() {
+		assert (!empty);
+		return cents;
+	}
+
+	/**
+	 * @return the number (starting from 1) of the last line read
+	 */
+	int lineNumber() {
+		return lineNumber;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private long accumulate(final long result, final int digit) {
+		if (result < (Long.MIN_VALUE + digit) / 10) {
+			throw new IllegalArgumentException("Amount out of range at line "
+					+ lineNumber);
+		}
+		return result * 10 - digit;
+	}
+
+	private IllegalArgumentException invalid() {
+		return new IllegalArgumentException("Invalid line format at line "
+				+ lineNumber);
+	}
+
+	/**
+	 * @return the next byte of the file, -1 at the end of the file
+	 */
+	private int read() throws IOException {
+		if (!buffer.hasRemaining()) {
+			buffer.clear();
+			int n;
+			do {
+				n = channel.read(buffer);
+			} while (n == 0);
+			buffer.flip();
+			if (n < 0) {
+				return -1;
+			}
+		}
+		return buffer.get() & 0xff;
+	}
+
+}
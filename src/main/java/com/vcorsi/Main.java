@@ -6,13 +6,20 @@ import java.io.PrintWriter;
 import java.math.BigDecimal;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
-import com.vcorsi.myfinder.Finder;
+import com.vcorsi.myfinder.AllocationResult;
+import com.vcorsi.myfinder.ApproximateResult;
+import com.vcorsi.myfinder.BatchFinder;
+import com.vcorsi.myfinder.CancellableFinder;
+import com.vcorsi.myfinder.CancellationToken;
+import com.vcorsi.myfinder.Cents;
+import com.vcorsi.myfinder.FindResult;
+import com.vcorsi.myfinder.FinderConfig;
 import com.vcorsi.myfinder.FinderFactory;
+import com.vcorsi.myfinder.Metrics;
+import com.vcorsi.myfinder.Progress;
 
 /**
  * Main class of the program.
@@ -22,9 +29,16 @@ import com.vcorsi.myfinder.FinderFactory;
  */
 public class Main {
 
+	/**
+	 * Requests which can wait for a worker in server mode
+	 */
+	static final int SERVER_QUEUE = 64;
+
 	private final Path inputPath;
 	private final Path outputPath;
 	private final Format format;
+	private final FinderConfig config;
+	private final long tolerance;
 
 	/**
 	 * @param inputPath
@@ -33,9 +47,41 @@ public class Main {
 	 *            path where to write the output file
 	 */
 	public Main(final Path inputPath, final Path outputPath) {
+		this(inputPath, outputPath, new FinderConfig());
+	}
+
+	/**
+	 * @param inputPath
+	 *            path to the input file
+	 * @param outputPath
+	 *            path where to write the output file
+	 * @param config
+	 *            tuning parameters of the finders
+	 */
+	public Main(final Path inputPath, final Path outputPath,
+			final FinderConfig config) {
+		this(inputPath, outputPath, config, 0);
+	}
+
+	/**
+	 * @param inputPath
+	 *            path to the input file
+	 * @param outputPath
+	 *            path where to write the output file
+	 * @param config
+	 *            tuning parameters of the finders
+	 * @param tolerance
+	 *            when positive, the solution may sum up to the bank transfer
+	 *            plus or minus this number of cents, the closest sum being
+	 *            chosen
+	 */
+	public Main(final Path inputPath, final Path outputPath,
+			final FinderConfig config, final long tolerance) {
 		this.inputPath = inputPath;
 		this.outputPath = outputPath;
 		this.format = new Format();
+		this.config = config;
+		this.tolerance = tolerance;
 	}
 
 	/**
@@ -44,62 +90,552 @@ public class Main {
 	 * @throws IOException
 	 */
 	void execute() throws IOException {
-		final BigDecimal bankTransfer;
-		final List<BigDecimal> amounts = new ArrayList<>();
+		execute(new CancellationToken(), new Progress());
+	}
+
+	/**
+	 * Reads input file, executes the research and writes the output file. If
+	 * the token expires before the research ends the output file contains
+	 * TIMEOUT.
+	 * 
+	 * @param token
+	 *            stops the research
+	 * @param progress
+	 *            updated during the research
+	 * @return the outcome of the research
+	 * @throws IOException
+	 */
+	FindResult.Status execute(final CancellationToken token,
+			final Progress progress) throws IOException {
+		final Metrics metrics = Metrics.get();
+		long start = System.nanoTime();
 		// Scanning the input file
-		try (Scanner scanner = new Scanner(inputPath)) {
-			if (!scanner.hasNext()) {
-				throw new IllegalStateException(
-						"Bank transfer amount not found.");
+		final long[][] input = readInput(false);
+		final long bankTransfer = input[0][0];
+		final long[] duePayments = input[1];
+		metrics.recordParse(System.nanoTime() - start);
+		start = System.nanoTime();
+		// Looking for a solution
+		final CancellableFinder finder = tolerance > 0 ? FinderFactory
+				.toleranceFinder(duePayments, bankTransfer, tolerance, config)
+				: FinderFactory.finder(duePayments, bankTransfer, config);
+		final FindResult result = finder.find(token, progress);
+		metrics.recordSolve(System.nanoTime() - start);
+		start = System.nanoTime();
+		// Printing output file
+		try (PrintWriter pw = new PrintWriter(new FileWriter(
+				outputPath.toFile()))) {
+			switch (result.getStatus()) {
+			case TIMEOUT:
+				pw.print("TIMEOUT");
+				break;
+			case CANCELLED:
+				pw.print("CANCELLED");
+				break;
+			default:
+				print(pw, format, result.getSolution());
 			}
-			final String sumLine = scanner.nextLine();
-			bankTransfer = format.parse(sumLine);
-			while (scanner.hasNext()) {
-				amounts.add(format.parse(scanner.nextLine()));
+		}
+		metrics.recordWrite(System.nanoTime() - start);
+		return result.getStatus();
+	}
+
+	/**
+	 * Reads the input file, looks for an approximate solution and writes it in
+	 * the output file: its sum is at most the bank transfer, and may be lower.
+	 * 
+	 * @param epsilon
+	 *            the relative error, in (0, 1]
+	 * @return the solution with its error bound
+	 * @throws IOException
+	 */
+	ApproximateResult executeApproximate(final double epsilon)
+			throws IOException {
+		return executeApproximate(epsilon, new CancellationToken());
+	}
+
+	/**
+	 * Like {@link #executeApproximate(double)}, but if the token expires
+	 * before the research ends the output file contains TIMEOUT.
+	 * 
+	 * @param epsilon
+	 *            the relative error, in (0, 1]
+	 * @param token
+	 *            stops the research
+	 * @return the solution with its error bound, or the reason why there is
+	 *         none
+	 * @throws IOException
+	 */
+	ApproximateResult executeApproximate(final double epsilon,
+			final CancellationToken token) throws IOException {
+		final Metrics metrics = Metrics.get();
+		long start = System.nanoTime();
+		// Scanning the input file
+		final long[][] input = readInput(false);
+		final long bankTransfer = input[0][0];
+		final long[] duePayments = input[1];
+		metrics.recordParse(System.nanoTime() - start);
+		start = System.nanoTime();
+		final ApproximateResult result = FinderFactory.approximateFinder(
+				duePayments, bankTransfer, epsilon).findApproximate(token);
+		metrics.recordSolve(System.nanoTime() - start);
+		start = System.nanoTime();
+		// Printing output file
+		try (PrintWriter pw = new PrintWriter(new FileWriter(
+				outputPath.toFile()))) {
+			switch (result.getStatus()) {
+			case TIMEOUT:
+				pw.print("TIMEOUT");
+				break;
+			case CANCELLED:
+				pw.print("CANCELLED");
+				break;
+			default:
+				print(pw, format, result.getSolution());
 			}
 		}
-		if (amounts.size() == 0) {
-			throw new IllegalStateException("Due payment amounts not found.");
+		metrics.recordWrite(System.nanoTime() - start);
+		return result;
+	}
+
+	/**
+	 * Reads a batch input file, solves all its bank transfers against the
+	 * same due payments and writes the output file. The input file contains
+	 * the bank transfers, one per line, then an empty line, then the due
+	 * payments. The output file contains a block per bank transfer, in input
+	 * order: a line <code>TRANSFER amount</code> followed by the solution.
+	 * Blocks are separated by an empty line.
+	 * 
+	 * @param disjoint
+	 *            if true each due payment can settle at most one transfer;
+	 *            when the transfers cannot all be settled this way every
+	 *            block contains NO SOLUTION.
+	 * @return the number of bank transfers solved
+	 * @throws IOException
+	 */
+	int executeBatch(final boolean disjoint) throws IOException {
+		return executeBatch(disjoint, new CancellationToken());
+	}
+
+	/**
+	 * Same as {@link #executeBatch(boolean)}, but the search stops when the
+	 * token expires: every block then contains TIMEOUT.
+	 * 
+	 * @param token
+	 *            stops the search
+	 * @return the number of bank transfers solved
+	 * @throws IOException
+	 */
+	int executeBatch(final boolean disjoint, final CancellationToken token)
+			throws IOException {
+		final Metrics metrics = Metrics.get();
+		long start = System.nanoTime();
+		// Scanning the input file
+		final long[][] input = readInput(true);
+		final long[] bankTransfers = input[0];
+		final int numOfTransfers = bankTransfers.length;
+		final long[] duePayments = input[1];
+		metrics.recordParse(System.nanoTime() - start);
+		start = System.nanoTime();
+		final BigDecimal[][] solutions;
+		FindResult.Status status = FindResult.Status.SOLVED;
+		if (disjoint) {
+			final AllocationResult allocation = FinderFactory
+					.allocationFinder(duePayments, bankTransfers, config).find(
+							token, new Progress());
+			status = allocation.getStatus();
+			solutions = status == FindResult.Status.SOLVED ? allocation
+					.getSolutions() : new BigDecimal[numOfTransfers][0];
+		} else {
+			// Building the shared matrix up to the largest transfer
+			long maxTransfer = 0;
+			for (long t : bankTransfers) {
+				maxTransfer = Math.max(maxTransfer, t);
+			}
+			final BatchFinder finder = FinderFactory.batchFinder(duePayments,
+					maxTransfer, config);
+			status = finder.build(token, new Progress());
+			solutions = new BigDecimal[numOfTransfers][];
+			for (int i = 0; i < numOfTransfers; i++) {
+				solutions[i] = status == FindResult.Status.SOLVED ? finder
+						.find(bankTransfers[i]) : new BigDecimal[0];
+			}
 		}
-		// Looking for a solution
-		final BigDecimal[] duePayments = amounts.toArray(new BigDecimal[amounts
-				.size()]);
-		final Finder finder = FinderFactory.finder(duePayments, bankTransfer);
-		final BigDecimal[] solution = finder.find();
+		metrics.recordSolve(System.nanoTime() - start);
+		start = System.nanoTime();
 		// Printing output file
 		try (PrintWriter pw = new PrintWriter(new FileWriter(
 				outputPath.toFile()))) {
-			if (solution.length == 0) {
-				pw.print("NO SOLUTION");
-				return;
-			}
-			// sort ascending
-			Arrays.sort(solution);
-			for (int i = 0; i < solution.length; i++) {
-				pw.print(format.format(solution[i]));
-				if(i < solution.length - 1){
+			for (int i = 0; i < numOfTransfers; i++) {
+				if (i > 0) {
 					pw.println();
+					pw.println();
+				}
+				pw.println("TRANSFER " + format.format(bankTransfers[i]));
+				if (status == FindResult.Status.TIMEOUT
+						|| status == FindResult.Status.CANCELLED) {
+					pw.print(status.name());
+				} else {
+					print(pw, format, solutions[i]);
 				}
 			}
 		}
+		metrics.recordWrite(System.nanoTime() - start);
+		return numOfTransfers;
+	}
+
+	/**
+	 * Reads the input file and writes its amounts in a binary ledger, which
+	 * later runs load without parsing (see {@link BinaryLedger}).
+	 * 
+	 * @param ledgerPath
+	 *            path where to write the binary ledger
+	 * @param batch
+	 *            if true the input file is a batch input file (see
+	 *            {@link #executeBatch(boolean)})
+	 * @return the ledger written
+	 * @throws IOException
+	 */
+	BinaryLedger convert(final Path ledgerPath, final boolean batch)
+			throws IOException {
+		final long[][] input = readInput(batch);
+		final BinaryLedger ledger = BinaryLedger.of(input[0], input[1]);
+		ledger.write(ledgerPath);
+		return ledger;
+	}
+
+	/**
+	 * Reads the bank transfers and the due payments of the input file, a text
+	 * file or a binary ledger.
+	 * 
+	 * @param batch
+	 *            if true there can be many bank transfers, otherwise there is
+	 *            exactly one
+	 * @return the bank transfers and the due payments, in cents
+	 * @throws IOException
+	 */
+	private long[][] readInput(final boolean batch) throws IOException {
+		final long[] transfers;
+		final long[] duePayments;
+		if (BinaryLedger.isBinary(inputPath)) {
+			final BinaryLedger ledger = BinaryLedger.read(inputPath);
+			transfers = ledger.transfers();
+			duePayments = ledger.payments();
+		} else {
+			try (LedgerReader reader = new LedgerReader(inputPath)) {
+				long[] t = new long[batch ? 16 : 1];
+				int numOfTransfers = 0;
+				while ((batch || numOfTransfers == 0) && reader.nextLine()
+						&& !reader.isEmpty()) {
+					t = append(t, numOfTransfers++, reader.cents());
+				}
+				transfers = Arrays.copyOf(t, numOfTransfers);
+				duePayments = readAmounts(reader);
+			}
+		}
+		if (transfers.length == 0) {
+			throw new IllegalStateException(batch ? "Bank transfer amounts not found."
+					: "Bank transfer amount not found.");
+		}
+		if (!batch && transfers.length > 1) {
+			throw new IllegalStateException(
+					"Many bank transfers found, use -batch.");
+		}
+		if (duePayments.length == 0) {
+			throw new IllegalStateException("Due payment amounts not found.");
+		}
+		return new long[][] { transfers, duePayments };
+	}
+
+	/**
+	 * Prints the solution sorted ascending, one payment per line, or NO
+	 * SOLUTION if it is empty.
+	 */
+	static void print(final PrintWriter pw, final Format format,
+			final BigDecimal[] solution) {
+		if (solution.length == 0) {
+			pw.print("NO SOLUTION");
+			return;
+		}
+		// sort ascending
+		Arrays.sort(solution);
+		for (int i = 0; i < solution.length; i++) {
+			pw.print(format.format(solution[i]));
+			if(i < solution.length - 1){
+				pw.println();
+			}
+		}
+	}
+
+	/**
+	 * Reads the amounts up to the end of the file. Empty lines are only
+	 * allowed at the end of the file.
+	 * 
+	 * @return the amounts read, in cents
+	 */
+	private static long[] readAmounts(final LedgerReader reader)
+			throws IOException {
+		long[] amounts = new long[16];
+		int numOfAmounts = 0;
+		int emptyLine = 0;
+		while (reader.nextLine()) {
+			if (reader.isEmpty()) {
+				if (emptyLine == 0) {
+					emptyLine = reader.lineNumber();
+				}
+				continue;
+			}
+			if (emptyLine != 0) {
+				throw new IllegalArgumentException(
+						"Invalid line format at line " + emptyLine);
+			}
+			amounts = append(amounts, numOfAmounts++, reader.cents());
+		}
+		return Arrays.copyOf(amounts, numOfAmounts);
+	}
+
+	/**
+	 * @return array, grown if needed, with value stored at index size
+	 */
+	private static long[] append(final long[] array, final int size,
+			final long value) {
+		final long[] result = size == array.length ? Arrays.copyOf(array,
+				size * 2) : array;
+		result[size] = value;
+		return result;
+	}
+
+	/**
+	 * @param size
+	 *            a number of bytes, optionally followed by k, m or g
+	 * @return the number of bytes
+	 * @throws IllegalArgumentException
+	 *             if size is not a non negative number of bytes fitting in a
+	 *             long
+	 */
+	static long parseSize(final String size) {
+		final String lower = size.toLowerCase();
+		if (lower.isEmpty()) {
+			throw new IllegalArgumentException("Invalid size " + size);
+		}
+		final int unit = "kmg".indexOf(lower.charAt(lower.length() - 1)) + 1;
+		final long number;
+		try {
+			number = Long.parseLong(unit == 0 ? lower : lower.substring(0,
+					lower.length() - 1));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid size " + size);
+		}
+		if (number < 0 || number > Long.MAX_VALUE >>> (10 * unit)) {
+			throw new IllegalArgumentException("Invalid size " + size);
+		}
+		return number << (10 * unit);
 	}
 
 	/**
 	 * @param args
-	 *            one argument: a file path containing the input file
+	 *            options followed by a file path containing the input file.
+	 *            Options: <code>-threads N</code> number of threads used by
+	 *            the finders, <code>-heap SIZE</code> memory the chosen finder
+	 *            may use (e.g. 512m, 2g), <code>-calibrate</code> measure the
+	 *            speed of the finders before choosing one,
+	 *            <code>-sparse</code> the dynamic programming finder only
+	 *            stores the reachable sums, <code>-cache DIR</code> save the
+	 *            dynamic programming matrix in DIR and reuse it in the next
+	 *            runs, <code>-offheap DIR</code> keep the dynamic
+	 *            programming matrix outside the heap, in a memory mapped
+	 *            file in DIR, <code>-batch</code> the input
+	 *            file contains many
+	 *            bank transfers (see {@link #executeBatch(boolean)}),
+	 *            <code>-disjoint</code> in batch mode each due payment can
+	 *            settle at most one transfer, <code>-timeout SECONDS</code>
+	 *            stop the research after the given time, writing TIMEOUT,
+	 *            <code>-tolerance AMOUNT</code> accept the solution closest
+	 *            to the bank transfer within the given amount (e.g. 0.05),
+	 *            <code>-approximate EPSILON</code> look for a solution
+	 *            summing up to at most the bank transfer, within the given
+	 *            relative error (see {@link #executeApproximate(double)}),
+	 *            <code>-stats FILE</code> count the work of the finders,
+	 *            exported through JMX, and write it to FILE at the end (see
+	 *            {@link Metrics}), <code>-convert FILE</code> instead of
+	 *            looking for a solution, write the amounts of the input file
+	 *            in the binary ledger FILE, which can be given as input file
+	 *            to the next runs (see {@link BinaryLedger}),
+	 *            <code>-server PORT</code> instead of
+	 *            reading an input file,
+	 *            answer requests on http://127.0.0.1:PORT/find (see
+	 *            {@link Server}).
 	 */
 	public static void main(String[] args) {
-		if (args.length < 1) {
+		final FinderConfig config = new FinderConfig();
+		boolean batch = false;
+		boolean disjoint = false;
+		long timeout = 0;
+		long tolerance = 0;
+		double epsilon = 0;
+		Path stats = null;
+		Path ledger = null;
+		int port = -1;
+		int argIdx = 0;
+		try {
+			for (; argIdx < args.length && args[argIdx].startsWith("-"); argIdx++) {
+				if (args[argIdx].equals("-threads") && argIdx + 1 < args.length) {
+					config.setParallelism(Integer.parseInt(args[++argIdx]));
+				} else if (args[argIdx].equals("-heap") && argIdx + 1 < args.length) {
+					config.setHeapBudget(parseSize(args[++argIdx]));
+				} else if (args[argIdx].equals("-calibrate")) {
+					config.setCalibrate(true);
+				} else if (args[argIdx].equals("-sparse")) {
+					config.setSparse(true);
+				} else if (args[argIdx].equals("-cache") && argIdx + 1 < args.length) {
+					config.setCacheDirectory(Paths.get(args[++argIdx]));
+				} else if (args[argIdx].equals("-offheap") && argIdx + 1 < args.length) {
+					config.setOffHeapDirectory(Paths.get(args[++argIdx]));
+				} else if (args[argIdx].equals("-batch")) {
+					batch = true;
+				} else if (args[argIdx].equals("-disjoint")) {
+					disjoint = true;
+				} else if (args[argIdx].equals("-timeout") && argIdx + 1 < args.length) {
+					timeout = Long.parseLong(args[++argIdx]);
+					if (timeout <= 0) {
+						throw new IllegalArgumentException(
+								"Timeout must be positive");
+					}
+				} else if (args[argIdx].equals("-tolerance") && argIdx + 1 < args.length) {
+					tolerance = new Format().parseCents(args[++argIdx]);
+					if (tolerance < 0) {
+						throw new IllegalArgumentException(
+								"Tolerance cannot be negative");
+					}
+				} else if (args[argIdx].equals("-approximate") && argIdx + 1 < args.length) {
+					epsilon = Double.parseDouble(args[++argIdx]);
+					if (!(epsilon > 0 && epsilon <= 1)) {
+						throw new IllegalArgumentException(
+								"Epsilon must be in (0, 1]");
+					}
+				} else if (args[argIdx].equals("-stats") && argIdx + 1 < args.length) {
+					stats = Paths.get(args[++argIdx]);
+				} else if (args[argIdx].equals("-convert") && argIdx + 1 < args.length) {
+					ledger = Paths.get(args[++argIdx]);
+				} else if (args[argIdx].equals("-server") && argIdx + 1 < args.length) {
+					port = Integer.parseInt(args[++argIdx]);
+				} else {
+					throw new IllegalArgumentException("Unknown option "
+							+ args[argIdx]);
+				}
+			}
+			// options the chosen mode would silently ignore
+			if (tolerance > 0 && (batch || port >= 0 || epsilon > 0)) {
+				throw new IllegalArgumentException(
+						"-tolerance cannot be used with -batch, -server or -approximate");
+			}
+			if (epsilon > 0 && (batch || port >= 0)) {
+				throw new IllegalArgumentException(
+						"-approximate cannot be used with -batch or -server");
+			}
+			if (disjoint && !batch) {
+				throw new IllegalArgumentException("-disjoint requires -batch");
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println("Error: " + e.getMessage());
+			System.exit(1);
+		}
+		final Path statsFile = stats;
+		if (statsFile != null) {
+			Metrics.setEnabled(true);
+			Metrics.get().register();
+		}
+		if (port >= 0) {
+			try {
+				if (statsFile != null) {
+					// the server runs until the JVM is stopped
+					Runtime.getRuntime().addShutdownHook(new Thread() {
+
+						@Override
+						public void run() {
+							try {
+								Metrics.get().writeStats(statsFile);
+							} catch (IOException e) {
+								System.out.println("Error: " + e.getMessage());
+							}
+						}
+					});
+				}
+				// a request per core, each with the configured threads
+				final Server server = new Server(port, config, Math.max(1,
+						Runtime.getRuntime().availableProcessors()
+								/ config.getParallelism()), SERVER_QUEUE,
+						timeout);
+				server.start();
+				System.out.println("Listening on http://127.0.0.1:"
+						+ server.port() + Server.PATH);
+			} catch (Exception e) {
+				System.out.println("Error: " + e.getMessage());
+				System.exit(1);
+			}
+			return;
+		}
+		if (argIdx >= args.length) {
 			System.out.println("Error: provide an input file");
 			System.exit(1);
 		}
 		try {
-			final Path path = Paths.get(args[0]);
+			final Path path = Paths.get(args[argIdx]);
 			if (!path.toFile().exists()) {
 				throw new IllegalArgumentException("File does not exist");
 			}
-			final Main main = new Main(path, Paths.get("output.txt"));
-			main.execute();
+			final Main main = new Main(path, Paths.get("output.txt"), config,
+					tolerance);
+			if (ledger != null) {
+				final long start = System.nanoTime();
+				final BinaryLedger result = main.convert(ledger, batch);
+				System.out.println(String.format(
+						"Converted %d due payments in %.3f s: min %s, max %s, "
+								+ "sum %s, gcd %s",
+						result.payments().length,
+						(System.nanoTime() - start) / 1e9,
+						Cents.toBigDecimal(result.min()),
+						Cents.toBigDecimal(result.max()),
+						Cents.toBigDecimal(result.sum()),
+						Cents.toBigDecimal(result.gcd())));
+			} else if (batch) {
+				final long start = System.nanoTime();
+				final int numOfTransfers = main.executeBatch(disjoint,
+						timeout > 0 ? CancellationToken.withTimeout(timeout,
+								TimeUnit.SECONDS) : new CancellationToken());
+				final double seconds = (System.nanoTime() - start) / 1e9;
+				System.out.println(String.format(
+						"Reconciled %d transfers in %.3f s (%.1f transfers/s)",
+						numOfTransfers, seconds, numOfTransfers / seconds));
+			} else if (epsilon > 0) {
+				final ApproximateResult result = main.executeApproximate(
+						epsilon,
+						timeout > 0 ? CancellationToken.withTimeout(timeout,
+								TimeUnit.SECONDS) : new CancellationToken());
+				if (result.getStatus() == FindResult.Status.TIMEOUT) {
+					System.out.println("Timeout");
+				} else {
+					System.out.println(String.format(
+							"Approximate solution summing up to %s, at most %s "
+									+ "below the best one", result.getSum(),
+							result.getErrorBound()));
+				}
+			} else {
+				final Progress progress = new Progress();
+				final FindResult.Status status = main.execute(
+						timeout > 0 ? CancellationToken.withTimeout(timeout,
+								TimeUnit.SECONDS) : new CancellationToken(),
+						progress);
+				if (status == FindResult.Status.TIMEOUT) {
+					System.out.println(String.format(
+							"Timeout: %d rows built, %d nodes explored",
+							progress.getRowsDone(),
+							progress.getNodesExplored()));
+				}
+			}
+			if (statsFile != null) {
+				Metrics.get().writeStats(statsFile);
+			}
 		} catch (Exception e) {
 			System.out.println("Error: " + e.getMessage());
 			System.exit(1);
@@ -0,0 +1,546 @@
+package com.vcorsi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.vcorsi.myfinder.BatchFinder;
+import com.vcorsi.myfinder.CancellationToken;
+import com.vcorsi.myfinder.FindResult;
+import com.vcorsi.myfinder.FinderConfig;
+import com.vcorsi.myfinder.FinderFactory;
+import com.vcorsi.myfinder.Progress;
+
+/**
+ * HTTP server answering the Accounting Dilemma on <code>POST /find</code>,
+ * bound to the loopback interface only.
+ *
+ * The request body is either JSON,
+ * <code>{"transfer": "74.06", "payments": ["22.75", "59.33"]}</code> (amounts
+ * as strings or numbers, with exactly 2 decimals), or the format of the input
+ * file: the bank transfer on the first line, then the due payments. The
+ * response has the same format as the request: a JSON object
+ * <code>{"status": "SOLVED", "payments": [...]}</code>, or the content of the
+ * output file.
+ *
+ * Requests are solved by a fixed number of workers, fed by a bounded queue:
+ * when the queue is full the request is answered at once with 503 and a
+ * Retry-After header. Requests on the same due payments waiting in the queue
+ * are coalesced and solved together, building a single matrix up to their
+ * largest transfer if it fits in the heap budget, one request at a time
+ * otherwise. The HTTP handlers only parse and queue the requests, without
+ * waiting for them: the workers send the responses.
+ *
+ * @author vladimiro
+ *
+ */
+class Server implements Closeable {
+
+	static final String PATH = "/find";
+
+	private final FinderConfig config;
+	private final long timeout;
+	private final HttpServer httpServer;
+	private final ExecutorService handlers;
+	private final ThreadPoolExecutor workers;
+	/**
+	 * groups of requests waiting for a worker, by due payments
+	 */
+	private final Map<Ledger, Group> waiting = new HashMap<>();
+
+	/**
+	 * @param port
+	 *            the port to listen to on the loopback interface, 0 for any
+	 *            free port
+	 * @param config
+	 *            tuning parameters of the finders
+	 * @param numOfWorkers
+	 *            the number of requests solved at once
+	 * @param queueCapacity
+	 *            the number of requests which can wait for a worker, coalesced
+	 *            requests counting as one
+	 * @param timeout
+	 *            seconds after which the research of a group of coalesced
+	 *            requests is stopped, 0 for none
+	 * @throws IOException
+	 */
+	Server(final int port, final FinderConfig config, final int numOfWorkers,
+			final int queueCapacity, final long timeout) throws IOException {
+		this.config = config;
+		this.timeout = timeout;
+		this.workers = new ThreadPoolExecutor(numOfWorkers, numOfWorkers, 0,
+				TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+						queueCapacity));
+		// handlers never wait for the workers, so their queue drains quickly
+		this.handlers = Executors.newFixedThreadPool(numOfWorkers
+				+ queueCapacity);
+		this.httpServer = HttpServer.create(new InetSocketAddress(
+				InetAddress.getLoopbackAddress(), port), 0);
+		httpServer.createContext(PATH, new FindHandler());
+		httpServer.setExecutor(handlers);
+	}
+
+	void start() {
+		httpServer.start();
+	}
+
+	/**
+	 * @return the port the server listens to
+	 */
+	int port() {
+		return httpServer.getAddress().getPort();
+	}
+
+	@Override
+	public void close() {
+		httpServer.stop(0);
+		handlers.shutdownNow();
+		workers.shutdownNow();
+	}
+
+	private class FindHandler implements HttpHandler {
+
+		@Override
+		public void handle(final HttpExchange exchange) throws IOException {
+			// once queued, the exchange is closed by the worker
+			boolean queued = false;
+			try {
+				if (!exchange.getRequestMethod().equals("POST")) {
+					reply(exchange, 405, "Method not allowed");
+					return;
+				}
+				final String contentType = exchange.getRequestHeaders()
+						.getFirst("Content-Type");
+				final boolean json = contentType != null
+						&& contentType.startsWith("application/json");
+				final Request request;
+				try {
+					final String body = read(exchange.getRequestBody());
+					request = json ? parseJson(body) : parseLines(body);
+				} catch (IllegalArgumentException | IllegalStateException e) {
+					reply(exchange, 400, "Error: " + e.getMessage());
+					return;
+				}
+				try {
+					synchronized (waiting) {
+						Group g = waiting.get(request.ledger);
+						if (g == null) {
+							g = new Group(request.ledger);
+							workers.execute(g);
+							waiting.put(request.ledger, g);
+						}
+						g.add(request.transfer, exchange, json);
+					}
+					queued = true;
+				} catch (RejectedExecutionException e) {
+					exchange.getResponseHeaders().set("Retry-After", "1");
+					reply(exchange, 503, "Error: too many requests");
+				}
+			} finally {
+				if (!queued) {
+					exchange.close();
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Requests on the same due payments, solved together by a worker, which
+	 * then answers each of them. Requests can be added as long as it is
+	 * waiting.
+	 */
+	private class Group implements Runnable {
+
+		private final Ledger ledger;
+		private long[] transfers = new long[4];
+		private HttpExchange[] exchanges = new HttpExchange[4];
+		private boolean[] json = new boolean[4];
+		private int numOfTransfers;
+
+		Group(final Ledger ledger) {
+			this.ledger = ledger;
+		}
+
+		void add(final long transfer, final HttpExchange exchange,
+				final boolean isJson) {
+			if (numOfTransfers == transfers.length) {
+				transfers = Arrays.copyOf(transfers, numOfTransfers * 2);
+				exchanges = Arrays.copyOf(exchanges, numOfTransfers * 2);
+				json = Arrays.copyOf(json, numOfTransfers * 2);
+			}
+			transfers[numOfTransfers] = transfer;
+			exchanges[numOfTransfers] = exchange;
+			json[numOfTransfers] = isJson;
+			numOfTransfers++;
+		}
+
+		@Override
+		public void run() {
+			final int n;
+			synchronized (waiting) {
+				waiting.remove(ledger);
+				n = numOfTransfers;
+			}
+			final FindResult.Status[] statuses = new FindResult.Status[n];
+			final BigDecimal[][] solutions = new BigDecimal[n][];
+			Exception failure = null;
+			try {
+				solve(n, statuses, solutions);
+			} catch (RuntimeException | OutOfMemoryError e) {
+				failure = e instanceof Exception ? (Exception) e
+						: new IllegalStateException("Not enough memory");
+			}
+			for (int i = 0; i < n; i++) {
+				try {
+					if (failure != null) {
+						reply(exchanges[i], 500, "Error: " + failure.getMessage());
+					} else {
+						exchanges[i].getResponseHeaders().set("Content-Type",
+								json[i] ? "application/json" : "text/plain");
+						reply(exchanges[i], 200, json[i] ? toJson(statuses[i],
+								solutions[i]) : toText(statuses[i], solutions[i]));
+					}
+				} catch (IOException e) {
+					// the client has gone
+				} finally {
+					exchanges[i].close();
+				}
+			}
+		}
+
+		private void solve(final int n, final FindResult.Status[] statuses,
+				final BigDecimal[][] solutions) {
+			final CancellationToken token = timeout > 0 ? CancellationToken
+					.withTimeout(timeout, TimeUnit.SECONDS)
+					: new CancellationToken();
+			final BatchFinder batch = n > 1 ? batchFinder(n) : null;
+			if (batch != null) {
+				final FindResult.Status status = batch.build(token,
+						new Progress());
+				for (int i = 0; i < n; i++) {
+					solutions[i] = status == FindResult.Status.SOLVED ? batch
+							.find(transfers[i]) : new BigDecimal[0];
+					statuses[i] = status != FindResult.Status.SOLVED ? status
+							: solutions[i].length > 0 ? FindResult.Status.SOLVED
+									: FindResult.Status.NO_SOLUTION;
+				}
+				return;
+			}
+			for (int i = 0; i < n; i++) {
+				final FindResult result = FinderFactory.finder(
+						ledger.payments, transfers[i], config).find(token,
+						new Progress());
+				statuses[i] = result.getStatus();
+				solutions[i] = result.getSolution();
+			}
+		}
+
+		/**
+		 * @return a finder building a single matrix up to the largest
+		 *         transfer, null if it does not fit in the heap
+		 */
+		private BatchFinder batchFinder(final int n) {
+			long maxTransfer = 0;
+			for (int i = 0; i < n; i++) {
+				maxTransfer = Math.max(maxTransfer, transfers[i]);
+			}
+			try {
+				return FinderFactory.batchFinder(ledger.payments, maxTransfer,
+						config);
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+
+	}
+
+	/**
+	 * Due payments sorted ascending, so that requests listing them in another
+	 * order are coalesced.
+	 */
+	private static final class Ledger {
+
+		private final long[] payments;
+		private final int hash;
+
+		Ledger(final long[] payments) {
+			this.payments = payments;
+			Arrays.sort(payments);
+			this.hash = Arrays.hashCode(payments);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return obj instanceof Ledger
+					&& Arrays.equals(payments, ((Ledger) obj).payments);
+		}
+
+	}
+
+	private static final class Request {
+
+		private final long transfer;
+		private final Ledger ledger;
+
+		Request(final long transfer, final long[] payments) {
+			if (payments.length == 0) {
+				throw new IllegalStateException("Due payment amounts not found.");
+			}
+			if (transfer < 0) {
+				throw new IllegalArgumentException("Sum cannot be negative");
+			}
+			for (long p : payments) {
+				if (p < 0) {
+					throw new IllegalArgumentException("Invalid values");
+				}
+			}
+			this.transfer = transfer;
+			this.ledger = new Ledger(payments);
+		}
+
+	}
+
+	/**
+	 * Parses the format of the input file: the bank transfer, then the due
+	 * payments, one per line.
+	 */
+	static Request parseLines(final String body) {
+		final Format format = new Format();
+		final String[] lines = body.split("\r?\n");
+		int numOfLines = lines.length;
+		// trailing empty lines are allowed
+		while (numOfLines > 0 && lines[numOfLines - 1].isEmpty()) {
+			numOfLines--;
+		}
+		if (numOfLines == 0 || lines[0].isEmpty()) {
+			throw new IllegalStateException("Bank transfer amount not found.");
+		}
+		long transfer = 0;
+		final long[] payments = new long[numOfLines - 1];
+		for (int i = 0; i < numOfLines; i++) {
+			final long cents;
+			try {
+				cents = format.parseCents(lines[i]);
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(e.getMessage() + " at line "
+						+ (i + 1));
+			}
+			if (i == 0) {
+				transfer = cents;
+			} else {
+				payments[i - 1] = cents;
+			}
+		}
+		return new Request(transfer, payments);
+	}
+
+	/**
+	 * Parses a JSON object with the fields "transfer", an amount, and
+	 * "payments", an array of amounts. Amounts are strings or numbers with 2
+	 * decimals.
+	 */
+	static Request parseJson(final String body) {
+		final JsonReader reader = new JsonReader(body);
+		final Format format = new Format();
+		Long transfer = null;
+		long[] payments = null;
+		reader.expect('{');
+		if (!reader.skip('}')) {
+			do {
+				final String field = reader.string();
+				reader.expect(':');
+				if (field.equals("transfer")) {
+					transfer = format.parseCents(reader.amount());
+				} else if (field.equals("payments")) {
+					payments = new long[16];
+					int numOfPayments = 0;
+					reader.expect('[');
+					if (!reader.skip(']')) {
+						do {
+							if (numOfPayments == payments.length) {
+								payments = Arrays.copyOf(payments,
+										numOfPayments * 2);
+							}
+							payments[numOfPayments++] = format
+									.parseCents(reader.amount());
+						} while (reader.skip(','));
+						reader.expect(']');
+					}
+					payments = Arrays.copyOf(payments, numOfPayments);
+				} else {
+					throw new IllegalArgumentException("Unknown field " + field);
+				}
+			} while (reader.skip(','));
+			reader.expect('}');
+		}
+		reader.end();
+		if (transfer == null) {
+			throw new IllegalStateException("Bank transfer amount not found.");
+		}
+		if (payments == null) {
+			throw new IllegalStateException("Due payment amounts not found.");
+		}
+		return new Request(transfer, payments);
+	}
+
+	/**
+	 * Reads the tokens of the JSON requests: strings without escapes other
+	 * than \" and \\, and numbers.
+	 */
+	private static final class JsonReader {
+
+		private final String text;
+		private int pos;
+
+		JsonReader(final String text) {
+			this.text = text;
+		}
+
+		void expect(final char c) {
+			if (!skip(c)) {
+				throw invalid();
+			}
+		}
+
+		/**
+		 * @return true if the next token is c, which is skipped
+		 */
+		boolean skip(final char c) {
+			skipSpaces();
+			if (pos < text.length() && text.charAt(pos) == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		void end() {
+			skipSpaces();
+			if (pos < text.length()) {
+				throw invalid();
+			}
+		}
+
+		String string() {
+			expect('"');
+			final StringBuilder sb = new StringBuilder();
+			for (; pos < text.length() && text.charAt(pos) != '"'; pos++) {
+				if (text.charAt(pos) == '\\') {
+					pos++;
+					if (pos == text.length()
+							|| (text.charAt(pos) != '"' && text.charAt(pos) != '\\')) {
+						throw invalid();
+					}
+				}
+				sb.append(text.charAt(pos));
+			}
+			expect('"');
+			return sb.toString();
+		}
+
+		/**
+		 * @return the text of an amount, quoted or not
+		 */
+		String amount() {
+			skipSpaces();
+			if (pos < text.length() && text.charAt(pos) == '"') {
+				return string();
+			}
+			final int start = pos;
+			while (pos < text.length()
+					&& "+-.0123456789".indexOf(text.charAt(pos)) >= 0) {
+				pos++;
+			}
+			if (pos == start) {
+				throw invalid();
+			}
+			return text.substring(start, pos);
+		}
+
+		private void skipSpaces() {
+			while (pos < text.length()
+					&& Character.isWhitespace(text.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		private IllegalArgumentException invalid() {
+			return new IllegalArgumentException("Invalid JSON at character "
+					+ (pos + 1));
+		}
+
+	}
+
+	private static String toJson(final FindResult.Status status,
+			final BigDecimal[] solution) {
+		final Format format = new Format();
+		final StringBuilder sb = new StringBuilder();
+		sb.append("{\"status\": \"").append(status).append("\", \"payments\": [");
+		Arrays.sort(solution);
+		for (int i = 0; i < solution.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append('"').append(format.format(solution[i])).append('"');
+		}
+		return sb.append("]}").toString();
+	}
+
+	private static String toText(final FindResult.Status status,
+			final BigDecimal[] solution) {
+		if (status == FindResult.Status.TIMEOUT
+				|| status == FindResult.Status.CANCELLED) {
+			return status.toString();
+		}
+		final StringWriter sw = new StringWriter();
+		try (PrintWriter pw = new PrintWriter(sw)) {
+			Main.print(pw, new Format(), solution);
+		}
+		return sw.toString();
+	}
+
+	private static String read(final InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		for (int n; (n = in.read(buffer)) >= 0;) {
+			out.write(buffer, 0, n);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static void reply(final HttpExchange exchange, final int code,
+			final String body) throws IOException {
+		final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(code, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Base class of the enumerators working on amounts held in cents. Subclasses
+ * enumerate the indexes of the subsets, possibly including the empty one;
+ * this class skips the empty subset and converts the payments back into
+ * BigDecimal.
+ * 
+ * @author vladimiro
+ * 
+ */
+abstract class AbstractEnumerator implements SolutionEnumerator {
+
+	protected final Amounts amounts;
+	protected final long sum;
+
+	protected AbstractEnumerator(final Amounts amounts, final long sum) {
+		if (sum < 0) {
+			throw new IllegalArgumentException("Sum cannot be negative");
+		}
+		this.amounts = amounts;
+		this.sum = sum;
+	}
+
+	@Override
+	public Iterator<BigDecimal[]> solutions() {
+		final Iterator<int[]> subsets = sum > amounts.total() ? new ArrayList<int[]>()
+				.iterator() : subsets();
+		return new Iterator<BigDecimal[]>() {
+
+			private int[] next;
+
+			@Override
+			public boolean hasNext() {
+				while (next == null && subsets.hasNext()) {
+					final int[] subset = subsets.next();
+					if (subset.length > 0) {
+						next = subset;
+					}
+				}
+				return next != null;
+			}
+
+			@Override
+			public BigDecimal[] next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				final BigDecimal[] result = amounts.values(next);
+				next = null;
+				return result;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public List<BigDecimal[]> solutions(final int max) {
+		if (max <= 0) {
+			throw new IllegalArgumentException(
+					"Number of solutions must be positive");
+		}
+		final List<BigDecimal[]> result = new ArrayList<>();
+		final Iterator<BigDecimal[]> it = solutions();
+		while (result.size() < max && it.hasNext()) {
+			result.add(it.next());
+		}
+		return result;
+	}
+
+	/**
+	 * Counts the solutions by enumerating them.
+	 */
+	@Override
+	public long count() {
+		if (sum > amounts.total()) {
+			return 0;
+		}
+		long count = 0;
+		final Iterator<int[]> subsets = subsets();
+		while (subsets.hasNext() && count < Long.MAX_VALUE) {
+			if (subsets.next().length > 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Called when sum <= total.
+	 * 
+	 * @return a lazy iterator over the indexes of the amounts of every subset
+	 *         summing to sum, possibly including the empty subset when sum is
+	 *         0
+	 */
+	protected abstract Iterator<int[]> subsets();
+
+}
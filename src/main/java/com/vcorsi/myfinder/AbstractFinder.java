@@ -0,0 +1,101 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+
+/**
+ * Base class of the finders working on amounts held in cents. It handles the
+ * trivial cases, the cancellation of the search and converts the chosen
+ * payments back into BigDecimal, so subclasses only search for the indexes of
+ * a subset.
+ * 
+ * @author vladimiro
+ * 
+ */
+abstract class AbstractFinder implements CancellableFinder {
+
+	protected final Amounts amounts;
+	protected final long sum;
+
+	/**
+	 * @param amounts
+	 *            the due payments
+	 * @param sum
+	 *            the bank transfer in cents, non negative
+	 * @throws IllegalArgumentException
+	 */
+	AbstractFinder(final Amounts amounts, final long sum) {
+		if (sum < 0) {
+			throw new IllegalArgumentException("Sum cannot be negative");
+		}
+		this.amounts = amounts;
+		this.sum = sum;
+	}
+
+	/**
+	 * @return An array of values, chosen between the due payments,
+	 *         corresponding to a solution of the problem. If no solution is
+	 *         found an empty array is returned.
+	 */
+	@Override
+	public BigDecimal[] find() {
+		return find(new CancellationToken(), new Progress()).getSolution();
+	}
+
+	@Override
+	public FindResult find(final CancellationToken token,
+			final Progress progress) {
+		int[] idxes = trivialSolution(amounts, sum);
+		if (idxes == null) {
+			try {
+				idxes = findIdx(new SearchMonitor(token, progress));
+			} catch (CancelledException e) {
+				return new FindResult(
+						token.isExpired() ? FindResult.Status.TIMEOUT
+								: FindResult.Status.CANCELLED,
+						new BigDecimal[0]);
+			}
+		}
+		return new FindResult(idxes.length == 0 ? FindResult.Status.NO_SOLUTION
+				: FindResult.Status.SOLVED, amounts.values(idxes));
+	}
+
+	/**
+	 * Called when 0 < sum < total.
+	 * 
+	 * @param monitor
+	 *            to be told about the progress of the search
+	 * @return the indexes of the amounts summing to sum, empty if there is no
+	 *         such subset
+	 * @throws CancelledException
+	 *             if the search was cancelled
+	 */
+	protected abstract int[] findIdx(SearchMonitor monitor);
+
+	/**
+	 * @return the solution when sum is 0 or not lower than the total of the
+	 *         amounts (empty if there is none), null otherwise
+	 */
+	static int[] trivialSolution(final Amounts amounts, final long sum) {
+		if (sum > amounts.total()) {
+			return new int[0];
+		}
+		if (sum == amounts.total()) {
+			final int[] result = new int[amounts.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = i;
+			}
+			return result;
+		}
+		if (sum == 0) {
+			// the empty subset does not count as a solution
+			for (int i = 0; i < amounts.size(); i++) {
+				if (amounts.cents(i) == 0) {
+					return new int[] { i };
+				}
+			}
+			return new int[0];
+		}
+		return null;
+	}
+
+}
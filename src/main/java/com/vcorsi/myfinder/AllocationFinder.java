@@ -0,0 +1,33 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+
+/**
+ * Solves the Accounting Dilemma for several bank transfers arrived together:
+ * each due payment can settle at most one of them, so the solutions of the
+ * transfers must be disjoint.
+ * 
+ * @author vladimiro
+ * 
+ */
+public interface AllocationFinder {
+
+	/**
+	 * @return a solution per bank transfer, in the order the transfers were
+	 *         given: disjoint arrays of due payments whose sums are the
+	 *         transfers. If the transfers cannot all be settled an empty array
+	 *         is returned.
+	 */
+	BigDecimal[][] find();
+
+	/**
+	 * @param token
+	 *            checked during the search, which stops as soon as it is
+	 *            cancelled or expired
+	 * @param progress
+	 *            updated during the search
+	 * @return the solutions, or the reason why there are none
+	 */
+	AllocationResult find(CancellationToken token, Progress progress);
+
+}
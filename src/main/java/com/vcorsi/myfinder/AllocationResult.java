@@ -0,0 +1,40 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+
+/**
+ * Outcome of {@link AllocationFinder#find(CancellationToken, Progress)}.
+ * 
+ * @author vladimiro
+ * 
+ */
+public class AllocationResult {
+
+	private final FindResult.Status status;
+	private final BigDecimal[][] solutions;
+
+	AllocationResult(final FindResult.Status status,
+			final BigDecimal[][] solutions) {
+		this.status = status;
+		this.solutions = solutions;
+	}
+
+	/**
+	 * @return {@link FindResult.Status#SOLVED} if all the bank transfers are
+	 *         settled, {@link FindResult.Status#NO_SOLUTION} if they cannot
+	 *         all be settled, otherwise the reason why the search stopped
+	 */
+	public FindResult.Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return a solution per bank transfer, in the order the transfers were
+	 *         given, empty unless the status is
+	 *         {@link FindResult.Status#SOLVED}
+	 */
+	public BigDecimal[][] getSolutions() {
+		return solutions;
+	}
+
+}
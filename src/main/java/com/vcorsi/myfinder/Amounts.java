@@ -0,0 +1,172 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The due payments given to a {@link Finder}: a non empty list of non
+ * negative amounts held in cents. Finders work on cents and only turn the
+ * payments they choose back into BigDecimal when returning a solution.
+ * 
+ * @author vladimiro
+ * 
+ */
+final class Amounts {
+
+	private final long[] cents;
+	/**
+	 * the original values when amounts were given as BigDecimal, null
+	 * otherwise
+	 */
+	private final BigDecimal[] values;
+	private final long total;
+
+	private Amounts(final long[] cents, final BigDecimal[] values) {
+		if (cents.length == 0) {
+			throw new IllegalArgumentException("Values cannot be empty");
+		}
+		for (int i = 0; i < cents.length; i++) {
+			if (cents[i] < 0) {
+				throw new IllegalArgumentException("Invalid values");
+			}
+		}
+		this.cents = cents;
+		this.values = values;
+		this.total = Cents.sum(cents);
+	}
+
+	/**
+	 * @param values
+	 *            A non empty array of non negative numbers.
+	 * @throws IllegalArgumentException
+	 */
+	static Amounts of(final BigDecimal[] values) {
+		if (values == null) {
+			throw new NullPointerException("Values cannot be null");
+		}
+		final long[] cents = new long[values.length];
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == null) {
+				throw new IllegalArgumentException("Invalid values");
+			}
+			cents[i] = Cents.of(values[i]);
+		}
+		return new Amounts(cents, values.clone());
+	}
+
+	/**
+	 * @param cents
+	 *            A non empty array of non negative numbers of cents.
+	 * @throws IllegalArgumentException
+	 */
+	static Amounts of(final long[] cents) {
+		if (cents == null) {
+			throw new NullPointerException("Values cannot be null");
+		}
+		return new Amounts(cents.clone(), null);
+	}
+
+	int size() {
+		return cents.length;
+	}
+
+	long cents(final int idx) {
+		return cents[idx];
+	}
+
+	/**
+	 * @return the sum of all the amounts
+	 */
+	long total() {
+		return total;
+	}
+
+	/**
+	 * @return the amount at idx as a BigDecimal
+	 */
+	BigDecimal value(final int idx) {
+		return values == null ? Cents.toBigDecimal(cents[idx]) : values[idx];
+	}
+
+	/**
+	 * @return the amounts at the given indexes as BigDecimal
+	 */
+	BigDecimal[] values(final int[] idxes) {
+		final BigDecimal[] result = new BigDecimal[idxes.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = value(idxes[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the greatest common divisor of the amounts in (0, max], 1 if
+	 *         there is none. Every subset summing to at most max only contains
+	 *         multiples of it (and zeros).
+	 */
+	long gcd(final long max) {
+		long gcd = 0;
+		for (long c : cents) {
+			if (c > 0 && c <= max) {
+				gcd = gcd(gcd, c);
+				if (gcd == 1) {
+					break;
+				}
+			}
+		}
+		return gcd == 0 ? 1 : gcd;
+	}
+
+	private static long gcd(long a, long b) {
+		while (b != 0) {
+			final long r = a % b;
+			a = b;
+			b = r;
+		}
+		return a;
+	}
+
+	/**
+	 * @param idxes
+	 *            indexes of the amounts to be scaled
+	 * @param max
+	 *            the largest sum of interest
+	 * @param divisor
+	 *            {@link #gcd(long)} of max
+	 * @return the amounts at the given indexes divided by divisor. The amounts
+	 *         larger than max are kept as they are, so they stay larger than
+	 *         max / divisor.
+	 */
+	long[] scaled(final int[] idxes, final long max, final long divisor) {
+		final long[] result = new long[idxes.length];
+		for (int i = 0; i < result.length; i++) {
+			final long c = cents[idxes[i]];
+			result[i] = c > max ? c : c / divisor;
+		}
+		return result;
+	}
+
+	/**
+	 * @return indexes of the amounts sorted by ascending amount
+	 */
+	int[] ascendingOrder() {
+		final Integer[] order = new Integer[cents.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Long.compare(cents[o1], cents[o2]);
+			}
+		});
+		final int[] result = new int[order.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = order[i];
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,29 @@
+package com.vcorsi.myfinder;
+
+/**
+ * A {@link Finder} for transfers too large for the exact finders: it returns
+ * a subset of the due payments whose sum is at most the bank transfer and
+ * close to the best such subset, along with a bound on the error.
+ * {@link #find()} returns the approximate solution, whose sum may differ from
+ * the transfer.
+ * 
+ * @author vladimiro
+ * 
+ */
+public interface ApproximateFinder extends Finder {
+
+	/**
+	 * @return the approximate solution and its error bound
+	 */
+	ApproximateResult findApproximate();
+
+	/**
+	 * @param token
+	 *            checked during the search, which stops as soon as it is
+	 *            cancelled or expired
+	 * @return the approximate solution and its error bound, or the reason why
+	 *         there is none
+	 */
+	ApproximateResult findApproximate(CancellationToken token);
+
+}
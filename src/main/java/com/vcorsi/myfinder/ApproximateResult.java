@@ -0,0 +1,73 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+
+/**
+ * Outcome of {@link ApproximateFinder#findApproximate()}.
+ * 
+ * @author vladimiro
+ * 
+ */
+public class ApproximateResult {
+
+	private final FindResult.Status status;
+	private final BigDecimal[] solution;
+	private final long sum;
+	private final long errorBound;
+
+	ApproximateResult(final BigDecimal[] solution, final long sum,
+			final long errorBound) {
+		this(FindResult.Status.SOLVED, solution, sum, errorBound);
+	}
+
+	/**
+	 * A search stopped by its token, without solution.
+	 */
+	ApproximateResult(final FindResult.Status status) {
+		this(status, new BigDecimal[0], 0, 0);
+	}
+
+	private ApproximateResult(final FindResult.Status status,
+			final BigDecimal[] solution, final long sum, final long errorBound) {
+		this.status = status;
+		this.solution = solution;
+		this.sum = sum;
+		this.errorBound = errorBound;
+	}
+
+	/**
+	 * @return {@link FindResult.Status#SOLVED} if the search ended,
+	 *         {@link FindResult.Status#TIMEOUT} or
+	 *         {@link FindResult.Status#CANCELLED} if its token stopped it
+	 */
+	public FindResult.Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return due payments whose sum is at most the bank transfer, empty if
+	 *         every payment is larger than the transfer or the search was
+	 *         stopped
+	 */
+	public BigDecimal[] getSolution() {
+		return solution;
+	}
+
+	/**
+	 * @return the sum of the solution
+	 */
+	public BigDecimal getSum() {
+		return Cents.toBigDecimal(sum);
+	}
+
+	/**
+	 * @return the largest amount by which the best subset of the due payments
+	 *         not exceeding the bank transfer can exceed the solution: when
+	 *         the sum plus this bound is lower than the transfer, no subset
+	 *         sums up to the transfer.
+	 */
+	public BigDecimal getErrorBound() {
+		return Cents.toBigDecimal(errorBound);
+	}
+
+}
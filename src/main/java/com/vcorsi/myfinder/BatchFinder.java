@@ -0,0 +1,41 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+
+/**
+ * Solves the Accounting Dilemma for many bank transfers against the same list
+ * of due payments. Each transfer is solved independently: the same payment
+ * can be part of the solutions of several transfers.
+ * 
+ * @author vladimiro
+ * 
+ */
+public interface BatchFinder {
+
+	/**
+	 * @param transfer
+	 *            a bank transfer in cents, non negative and not greater than
+	 *            the largest transfer the finder was built for
+	 * @return a solution: array of due payments whose sum is the transfer,
+	 *         empty if there is none.
+	 * @throws IllegalArgumentException
+	 */
+	BigDecimal[] find(long transfer);
+
+	/**
+	 * Builds what the transfers are solved from, which is otherwise built by
+	 * the first call of {@link #find(long)}.
+	 * 
+	 * @param token
+	 *            checked during the build, which stops as soon as it is
+	 *            cancelled or expired
+	 * @param progress
+	 *            updated during the build
+	 * @return {@link FindResult.Status#SOLVED} once built,
+	 *         {@link FindResult.Status#TIMEOUT} or
+	 *         {@link FindResult.Status#CANCELLED} if the token stopped the
+	 *         build, which can be started again
+	 */
+	FindResult.Status build(CancellationToken token, Progress progress);
+
+}
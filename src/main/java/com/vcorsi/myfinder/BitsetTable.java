@@ -0,0 +1,704 @@
+package com.vcorsi.myfinder;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Reachability matrix of the subset sum problem stored as packed bitsets.
+ * Row i is a bitset whose bit s is set if there is a subset of the first i
+ * values summing to s (row 0 only contains the empty sum). Row i + 1 is
+ * obtained from row i with a single shift-OR by the i-th value.
+ *
+ * A row never stores bits above the sum of the values it covers, so the
+ * whole matrix takes at most rows * (capacity + 1) / 8 bytes.
+ *
+ * Every word of a row only depends on the previous row, so rows can also be
+ * built by several threads, each one filling its own stripes of words and
+ * waiting for the others on a barrier at the end of the row.
+ *
+ * The first rows can also be read from a mapped file, as {@link DPCache}
+ * does: they are never modified, so only the last of them is copied in the
+ * heap, to build the following ones.
+ *
+ * Every built row is reported to a {@link SearchMonitor}, which stops the
+ * build by throwing {@link CancelledException} when the search is cancelled.
+ *
+ * @author vladimiro
+ *
+ */
+final class BitsetTable {
+
+	/**
+	 * Largest capacity we can address: bitsets are indexed by int words.
+	 */
+	static final long MAX_CAPACITY = ((long) Integer.MAX_VALUE << 6) - 1;
+
+	/**
+	 * Words of a stripe built by a single thread: 32KB, the size of a typical
+	 * L1 data cache.
+	 */
+	static final int STRIPE_WORDS = 1 << 12;
+
+	private final long[] values;
+	private final long capacity;
+	/**
+	 * the rows, null for the mapped ones
+	 */
+	private final long[][] rows;
+	/**
+	 * rows read from a mapped file, null if there are none
+	 */
+	private LongBuffer[] mapped;
+	private final SearchMonitor monitor;
+	private int builtRows;
+	private long prefixSum;
+	/**
+	 * bytes of the built rows
+	 */
+	private long bytes;
+
+	/**
+	 * @param values
+	 *            non negative values, one per row, in the order rows are
+	 *            built.
+	 * @param capacity
+	 *            the largest sum the table has to represent.
+	 * @throws IllegalArgumentException
+	 */
+	BitsetTable(final long[] values, final long capacity) {
+		this(values, capacity, SearchMonitor.unbounded());
+	}
+
+	/**
+	 * @param values
+	 *            non negative values, one per row, in the order rows are
+	 *            built.
+	 * @param capacity
+	 *            the largest sum the table has to represent.
+	 * @param monitor
+	 *            told about every built row
+	 * @throws IllegalArgumentException
+	 */
+	BitsetTable(final long[] values, final long capacity,
+			final SearchMonitor monitor) {
+		if (capacity < 0 || capacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException("Sum too large");
+		}
+		this.values = values;
+		this.capacity = capacity;
+		this.rows = new long[values.length + 1][];
+		this.rows[0] = new long[] { 1L };
+		this.monitor = monitor;
+		this.builtRows = 1;
+		this.bytes = rowBytes(rows[0]);
+	}
+
+	/**
+	 * Starts from rows built earlier, for instance by a previous run.
+	 *
+	 * @param values
+	 *            non negative values, one per row, in the order rows are
+	 *            built.
+	 * @param capacity
+	 *            the largest sum the table has to represent.
+	 * @param builtRows
+	 *            the first rows of the table, starting from row 0, built for
+	 *            the same first values and capacity
+	 * @param monitor
+	 *            told about every row built from now on
+	 * @throws IllegalArgumentException
+	 */
+	BitsetTable(final long[] values, final long capacity,
+			final long[][] builtRows, final SearchMonitor monitor) {
+		this(values, capacity, monitor);
+		if (builtRows.length == 0 || builtRows.length > rows.length) {
+			throw new IllegalArgumentException("Invalid rows");
+		}
+		System.arraycopy(builtRows, 0, rows, 0, builtRows.length);
+		this.builtRows = builtRows.length;
+		for (int i = 0; i < builtRows.length - 1; i++) {
+			prefixSum = values[i] > capacity - prefixSum ? capacity
+					: prefixSum + values[i];
+		}
+		bytes = 0;
+		for (int i = 0; i < builtRows.length; i++) {
+			bytes += rowBytes(builtRows[i]);
+		}
+	}
+
+	/**
+	 * Starts from rows mapped from a file: only the last one is copied in the
+	 * heap, the others are read from the mapping.
+	 *
+	 * @param values
+	 *            non negative values, one per row, in the order rows are
+	 *            built.
+	 * @param capacity
+	 *            the largest sum the table has to represent.
+	 * @param mappedRows
+	 *            the first rows of the table, starting from row 0, built for
+	 *            the same first values and capacity. They must not change.
+	 * @param monitor
+	 *            told about every row built from now on
+	 * @throws IllegalArgumentException
+	 */
+	BitsetTable(final long[] values, final long capacity,
+			final LongBuffer[] mappedRows, final SearchMonitor monitor) {
+		this(values, capacity, monitor);
+		if (mappedRows.length == 0 || mappedRows.length > rows.length) {
+			throw new IllegalArgumentException("Invalid rows");
+		}
+		this.mapped = mappedRows;
+		this.builtRows = mappedRows.length;
+		for (int i = 0; i < builtRows - 1; i++) {
+			prefixSum = values[i] > capacity - prefixSum ? capacity
+					: prefixSum + values[i];
+		}
+		rows[0] = null;
+		final long[] last = new long[mappedRows[builtRows - 1].capacity()];
+		mappedRows[builtRows - 1].duplicate().get(last);
+		rows[builtRows - 1] = last;
+		bytes = rowBytes(last);
+	}
+
+	/**
+	 * Builds rows until the target sum becomes reachable.
+	 *
+	 * @param target
+	 *            a sum not greater than capacity
+	 * @return the index of the first row containing target, or -1 if no row
+	 *         contains it.
+	 * @throws CancelledException
+	 */
+	int build(final long target) {
+		assert (target >= 0 && target <= capacity);
+		final int found = firstRow(target);
+		if (found >= 0) {
+			return found;
+		}
+		while (builtRows < rows.length) {
+			final long[] row = nextRow();
+			if (get(row, target)) {
+				return builtRows - 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Builds all the rows, using the given number of threads.
+	 *
+	 * @param parallelism
+	 *            number of threads building each row
+	 * @throws CancelledException
+	 */
+	void buildAll(final int parallelism) {
+		build(-1, parallelism);
+	}
+
+	/**
+	 * Binary search of the first built row containing sum: a row contains all
+	 * the sums of the previous one.
+	 *
+	 * @return the index of the row or -1 if no built row contains sum
+	 */
+	int firstRow(final long sum) {
+		if (sum < 0 || sum > capacity || !has(builtRows - 1, sum)) {
+			return -1;
+		}
+		int low = 0;
+		int high = builtRows - 1;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (has(mid, sum)) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+	long capacity() {
+		return capacity;
+	}
+
+	long[] values() {
+		return values;
+	}
+
+	/**
+	 * @return the number of rows built so far, row 0 included
+	 */
+	int builtRows() {
+		return builtRows;
+	}
+
+	/**
+	 * @return a built row, copied in the heap if mapped; it must not be
+	 *         modified
+	 */
+	long[] row(final int idx) {
+		assert (idx < builtRows);
+		if (rows[idx] == null) {
+			final long[] row = new long[mapped[idx].capacity()];
+			mapped[idx].duplicate().get(row);
+			return row;
+		}
+		return rows[idx];
+	}
+
+	/**
+	 * Builds rows until the target sum becomes reachable, using the given
+	 * number of threads.
+	 *
+	 * @param target
+	 *            a sum not greater than capacity, or -1 to build all the rows
+	 * @param parallelism
+	 *            number of threads building each row
+	 * @return the index of the first row containing target, or -1 if no row
+	 *         contains it.
+	 * @throws CancelledException
+	 */
+	int build(final long target, final int parallelism) {
+		assert (target >= -1 && target <= capacity);
+		if (target >= 0) {
+			if (parallelism <= 1) {
+				return build(target);
+			}
+			final int row = firstRow(target);
+			if (row >= 0) {
+				return row;
+			}
+		} else if (parallelism <= 1) {
+			while (builtRows < rows.length) {
+				nextRow();
+			}
+			return -1;
+		}
+		if (builtRows == rows.length) {
+			return -1;
+		}
+		final StripedBuild build = new StripedBuild(target, parallelism);
+		final ExecutorService executor = Executors
+				.newFixedThreadPool(parallelism - 1);
+		try {
+			for (int id = 1; id < parallelism; id++) {
+				executor.execute(build.worker(id));
+			}
+			build.worker(0).run();
+		} finally {
+			executor.shutdown();
+		}
+		// the failure is only known once every worker has stopped: the
+		// first one to stop may have only seen the broken barrier
+		boolean interrupted = false;
+		while (!executor.isTerminated()) {
+			try {
+				executor.awaitTermination(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (build.failure instanceof Error) {
+			throw (Error) build.failure;
+		}
+		if (build.failure instanceof CancelledException) {
+			throw (CancelledException) build.failure;
+		}
+		if (build.failure != null) {
+			throw new IllegalStateException("Parallel build failed",
+					build.failure);
+		}
+		return build.found;
+	}
+
+	/**
+	 * Rebuilds the subset summing to target by walking the rows backwards: the
+	 * value of a row is part of the subset only if target was not reachable
+	 * without it.
+	 *
+	 * @param row
+	 *            a built row containing target
+	 * @param target
+	 *            the sum to decompose
+	 * @return indexes (in row order) of the values summing to target
+	 */
+	int[] reconstruct(final int row, final long target) {
+		assert (has(row, target));
+		int[] result = new int[16];
+		int size = 0;
+		long t = target;
+		for (int i = row; i > 0 && t > 0; i--) {
+			if (has(i - 1, t)) {
+				// reachable without the value of this row
+				continue;
+			}
+			if (size == result.length) {
+				result = Arrays.copyOf(result, size * 2);
+			}
+			result[size++] = i - 1;
+			t -= values[i - 1];
+		}
+		assert (t == 0);
+		return Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * Lazily enumerates all the subsets summing to target, walking the rows
+	 * backwards like {@link #reconstruct(int, long)} but following both the
+	 * branch without and the branch with the value of each row whenever the
+	 * previous row makes them possible: every branch leads to a subset.
+	 *
+	 * @param row
+	 *            a built row
+	 * @param target
+	 *            the sum to decompose, non negative. When 0 the empty subset
+	 *            is enumerated too.
+	 * @return an iterator over the indexes (in row order) of the values of
+	 *         each subset
+	 */
+	Iterator<int[]> subsets(final int row, final long target) {
+		assert (target >= 0 && target <= capacity);
+		return new SubsetIterator(row, target);
+	}
+
+	/**
+	 * Depth first visit of the decompositions of a sum, with an explicit
+	 * stack of (row, remaining sum, visited branches).
+	 */
+	private final class SubsetIterator implements Iterator<int[]> {
+
+		private int[] rowStack = new int[16];
+		private long[] sumStack = new long[16];
+		private byte[] stateStack = new byte[16];
+		/**
+		 * values chosen on the path to the top of the stack; pathSize[k] is
+		 * the size of the path when frame k was pushed
+		 */
+		private int[] path = new int[16];
+		private int[] pathSizes = new int[16];
+		private int top = -1;
+		private int[] next;
+
+		SubsetIterator(final int row, final long target) {
+			if (has(row, target)) {
+				push(row, target, 0);
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				next = advance();
+			}
+			return next != null;
+		}
+
+		@Override
+		public int[] next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final int[] result = next;
+			next = null;
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private int[] advance() {
+			while (top >= 0) {
+				int i = rowStack[top];
+				final long t = sumStack[top];
+				final int pathSize = pathSizes[top];
+				if (t == 0) {
+					// only values equal to 0 may still be chosen
+					while (i > 0 && values[i - 1] != 0) {
+						i--;
+					}
+					rowStack[top] = i;
+				}
+				if (i == 0) {
+					top--;
+					return Arrays.copyOf(path, pathSize);
+				}
+				final long value = values[i - 1];
+				if (stateStack[top] == 0) {
+					stateStack[top] = 1;
+					if (has(i - 1, t)) {
+						push(i - 1, t, pathSize);
+					}
+				} else if (stateStack[top] == 1) {
+					stateStack[top] = 2;
+					if (value <= t && has(i - 1, t - value)) {
+						if (pathSize == path.length) {
+							path = Arrays.copyOf(path, pathSize * 2);
+						}
+						path[pathSize] = i - 1;
+						push(i - 1, t - value, pathSize + 1);
+					}
+				} else {
+					top--;
+				}
+			}
+			return null;
+		}
+
+		private void push(final int row, final long sum, final int pathSize) {
+			top++;
+			if (top == rowStack.length) {
+				rowStack = Arrays.copyOf(rowStack, top * 2);
+				sumStack = Arrays.copyOf(sumStack, top * 2);
+				stateStack = Arrays.copyOf(stateStack, top * 2);
+				pathSizes = Arrays.copyOf(pathSizes, top * 2);
+			}
+			rowStack[top] = row;
+			sumStack[top] = sum;
+			stateStack[top] = 0;
+			pathSizes[top] = pathSize;
+		}
+	}
+
+	private long[] nextRow() {
+		final long[] prev = rows[builtRows - 1];
+		final long value = values[builtRows - 1];
+		prefixSum = value > capacity - prefixSum ? capacity : prefixSum
+				+ value;
+		final long[] row = Arrays.copyOf(prev, words(prefixSum));
+		if (value <= capacity) {
+			shiftOr(row, value);
+			clearAbove(row, prefixSum);
+		}
+		rows[builtRows++] = row;
+		bytes += rowBytes(row);
+		monitor.rowDone(64L * row.length, bytes);
+		return row;
+	}
+
+	/**
+	 * State shared by the threads building rows in parallel. The last thread
+	 * reaching the barrier at the end of a row publishes it and prepares the
+	 * next one.
+	 */
+	private final class StripedBuild implements Runnable {
+
+		private final long target;
+		private final int parallelism;
+		private final CyclicBarrier barrier;
+		private long[] prev;
+		private long[] next;
+		private long value;
+		private volatile boolean done;
+		private volatile Throwable failure;
+		private int found = -1;
+
+		StripedBuild(final long target, final int parallelism) {
+			this.target = target;
+			this.parallelism = parallelism;
+			this.barrier = new CyclicBarrier(parallelism, this);
+			prepare();
+		}
+
+		/**
+		 * Barrier action, run once per row when all the stripes are built.
+		 * Nothing is published once a worker has failed.
+		 */
+		@Override
+		public void run() {
+			if (done) {
+				return;
+			}
+			clearAbove(next, prefixSum);
+			rows[builtRows++] = next;
+			bytes += rowBytes(next);
+			monitor.rowDone(64L * next.length, bytes);
+			if (target >= 0 && get(next, target)) {
+				found = builtRows - 1;
+				done = true;
+			} else if (builtRows == rows.length) {
+				done = true;
+			} else {
+				prepare();
+			}
+		}
+
+		private void prepare() {
+			prev = rows[builtRows - 1];
+			value = values[builtRows - 1];
+			prefixSum = value > capacity - prefixSum ? capacity : prefixSum
+					+ value;
+			next = new long[words(prefixSum)];
+		}
+
+		Runnable worker(final int id) {
+			return new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						while (!done) {
+							final int numOfStripes = (next.length
+									+ STRIPE_WORDS - 1) / STRIPE_WORDS;
+							for (int k = id; k < numOfStripes; k += parallelism) {
+								final int from = k * STRIPE_WORDS;
+								shiftOr(prev, next, value, from,
+										Math.min(next.length, from
+												+ STRIPE_WORDS));
+							}
+							if (done) {
+								break;
+							}
+							barrier.await();
+						}
+					} catch (Throwable e) {
+						// the barrier broken by another failing thread is
+						// not the cause
+						if (failure == null
+								|| failure instanceof BrokenBarrierException) {
+							failure = e;
+						}
+						done = true;
+						breakBarrier();
+					}
+				}
+			};
+		}
+
+		/**
+		 * Leaves the barrier broken, so that the workers waiting on it, or
+		 * reaching it later, stop with a BrokenBarrierException instead of
+		 * waiting forever for this one. The barrier is never reset.
+		 */
+		private void breakBarrier() {
+			try {
+				barrier.await(0, TimeUnit.NANOSECONDS);
+			} catch (TimeoutException | BrokenBarrierException
+					| InterruptedException e) {
+				// broken, as wanted
+			}
+		}
+	}
+
+	/**
+	 * @return the bytes of row, array header included
+	 */
+	static long rowBytes(final long[] row) {
+		return 16 + 8L * row.length;
+	}
+
+	/**
+	 * @return the number of long words needed to store bits 0..maxBit
+	 */
+	static int words(final long maxBit) {
+		return (int) (maxBit >>> 6) + 1;
+	}
+
+	/**
+	 * @return true if sum is reachable in the built row idx
+	 */
+	private boolean has(final int idx, final long sum) {
+		final long[] row = rows[idx];
+		if (row != null) {
+			return get(row, sum);
+		}
+		final long word = sum >>> 6;
+		return word < mapped[idx].capacity()
+				&& (mapped[idx].get((int) word) & (1L << sum)) != 0;
+	}
+
+	static boolean get(final long[] bits, final long idx) {
+		final long word = idx >>> 6;
+		return word < bits.length && (bits[(int) word] & (1L << idx)) != 0;
+	}
+
+	/**
+	 * In place <code>bits |= bits << shift</code>. Words are visited from the
+	 * highest one, so every word is read before being updated.
+	 */
+	static void shiftOr(final long[] bits, final long shift) {
+		shiftOr(bits, shift, bits.length);
+	}
+
+	/**
+	 * In place <code>bits |= bits << shift</code> on the first length words
+	 * of bits, the others being left untouched.
+	 */
+	static void shiftOr(final long[] bits, final long shift, final int length) {
+		if (shift == 0) {
+			return;
+		}
+		final int wordShift = (int) (shift >>> 6);
+		final int bitShift = (int) (shift & 63);
+		if (bitShift == 0) {
+			for (int w = length - 1; w >= wordShift; w--) {
+				bits[w] |= bits[w - wordShift];
+			}
+		} else {
+			for (int w = length - 1; w > wordShift; w--) {
+				bits[w] |= (bits[w - wordShift] << bitShift)
+						| (bits[w - wordShift - 1] >>> (64 - bitShift));
+			}
+			if (wordShift < length) {
+				bits[wordShift] |= bits[0] << bitShift;
+			}
+		}
+	}
+
+	/**
+	 * <code>dst = src | src << shift</code> on the words in [from, to) of dst.
+	 * Words of src missing at either end count as 0.
+	 */
+	static void shiftOr(final long[] src, final long[] dst, final long shift,
+			final int from, final int to) {
+		if (shift > capacityOf(dst)) {
+			for (int w = from; w < to; w++) {
+				dst[w] = word(src, w);
+			}
+			return;
+		}
+		final int wordShift = (int) (shift >>> 6);
+		final int bitShift = (int) (shift & 63);
+		for (int w = from; w < to; w++) {
+			long shifted = word(src, w - wordShift) << bitShift;
+			if (bitShift != 0) {
+				shifted |= word(src, w - wordShift - 1) >>> (64 - bitShift);
+			}
+			dst[w] = word(src, w) | shifted;
+		}
+	}
+
+	private static long word(final long[] bits, final int idx) {
+		return idx >= 0 && idx < bits.length ? bits[idx] : 0;
+	}
+
+	private static long capacityOf(final long[] bits) {
+		return ((long) bits.length << 6) - 1;
+	}
+
+	/**
+	 * Clears the bits of the last word above maxBit.
+	 */
+	static void clearAbove(final long[] bits, final long maxBit) {
+		final int last = bits.length - 1;
+		final int used = (int) (maxBit & 63) + 1;
+		if (used < 64) {
+			bits[last] &= (1L << used) - 1;
+		}
+	}
+
+}
@@ -0,0 +1,22 @@
+package com.vcorsi.myfinder;
+
+/**
+ * A {@link Finder} whose search can be stopped and followed while it runs.
+ * 
+ * @author vladimiro
+ * 
+ */
+public interface CancellableFinder extends Finder {
+
+	/**
+	 * @param token
+	 *            checked during the search, which stops as soon as it is
+	 *            cancelled or expired
+	 * @param progress
+	 *            updated during the search
+	 * @return the solution, or the reason why there is none
+	 * @throws IllegalArgumentException
+	 */
+	FindResult find(CancellationToken token, Progress progress);
+
+}
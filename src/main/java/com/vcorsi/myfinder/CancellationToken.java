@@ -0,0 +1,66 @@
+package com.vcorsi.myfinder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops a running {@link CancellableFinder}, either on request or when a
+ * deadline passes. Finders check it every few thousand steps of their search,
+ * so stopping takes at most a few milliseconds.
+ * 
+ * @author vladimiro
+ * 
+ */
+public class CancellationToken {
+
+	/**
+	 * System.nanoTime() after which the token is expired, only meaningful if
+	 * hasDeadline
+	 */
+	private final long deadline;
+	private final boolean hasDeadline;
+	private volatile boolean cancelled;
+
+	/**
+	 * A token without deadline, only stopping the finder when
+	 * {@link #cancel()} is called.
+	 */
+	public CancellationToken() {
+		this.deadline = 0;
+		this.hasDeadline = false;
+	}
+
+	private CancellationToken(final long deadline) {
+		this.deadline = deadline;
+		this.hasDeadline = true;
+	}
+
+	/**
+	 * @return a token expiring after the given time from now
+	 */
+	public static CancellationToken withTimeout(final long timeout,
+			final TimeUnit unit) {
+		return new CancellationToken(System.nanoTime() + unit.toNanos(timeout));
+	}
+
+	/**
+	 * Asks the finder using this token to stop.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return true if the finder using this token has to stop
+	 */
+	public boolean isCancelled() {
+		return cancelled || isExpired();
+	}
+
+	/**
+	 * @return true if the deadline of this token has passed
+	 */
+	public boolean isExpired() {
+		return hasDeadline && System.nanoTime() - deadline > 0;
+	}
+
+}
@@ -0,0 +1,18 @@
+package com.vcorsi.myfinder;
+
+/**
+ * Thrown inside a finder to unwind its search when its
+ * {@link CancellationToken} is cancelled.
+ * 
+ * @author vladimiro
+ * 
+ */
+class CancelledException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	CancelledException() {
+		super("Search cancelled", null, false, false);
+	}
+
+}
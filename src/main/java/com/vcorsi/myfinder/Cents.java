@@ -0,0 +1,76 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+
+/**
+ * Fixed point arithmetic on amounts with 2 decimal digits: an amount is the
+ * number of cents it is made of, held in a long. Operations check for
+ * overflow instead of silently wrapping around.
+ * 
+ * @author vladimiro
+ * 
+ */
+public final class Cents {
+
+	/**
+	 * Number of decimal digits of an amount
+	 */
+	public static final int SCALE = 2;
+
+	private Cents() {
+	}
+
+	/**
+	 * @param value
+	 *            an amount with at most 2 significant decimal digits
+	 * @return the number of cents of value
+	 * @throws IllegalArgumentException
+	 *             if value has more than 2 significant decimal digits or does
+	 *             not fit in a long
+	 */
+	public static long of(final BigDecimal value) {
+		if (value == null) {
+			throw new NullPointerException("value cannot be null");
+		}
+		try {
+			return value.movePointRight(SCALE).longValueExact();
+		} catch (ArithmeticException e) {
+			throw new IllegalArgumentException("Invalid amount " + value, e);
+		}
+	}
+
+	/**
+	 * @return cents as an amount with 2 decimal digits
+	 */
+	public static BigDecimal toBigDecimal(final long cents) {
+		return BigDecimal.valueOf(cents, SCALE);
+	}
+
+	/**
+	 * @return a + b
+	 * @throws ArithmeticException
+	 *             on overflow
+	 */
+	public static long add(final long a, final long b) {
+		final long r = a + b;
+		// overflow iff both operands have a sign different from the result
+		if (((a ^ r) & (b ^ r)) < 0) {
+			throw new ArithmeticException("Amount overflow");
+		}
+		return r;
+	}
+
+	/**
+	 * @return the sum of all the values
+	 * @throws ArithmeticException
+	 *             on overflow
+	 */
+	public static long sum(final long[] values) {
+		long result = 0;
+		for (long v : values) {
+			result = add(result, v);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,101 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+
+/**
+ * A {@link BatchFinder} building the {@link DPFinder} matrix once, up to the
+ * largest transfer, and answering every transfer from it: a transfer is found
+ * with a binary search of the first row containing it, then its subset is
+ * rebuilt from there. Amounts and transfers are divided by the greatest
+ * common divisor of the amounts, as in {@link DPFinder}. The matrix is built
+ * by {@link #build(CancellationToken, Progress)}, or by the first transfer.
+ * 
+ * @author vladimiro
+ * 
+ */
+class DPBatchFinder implements BatchFinder {
+
+	private final Amounts amounts;
+	/**
+	 * indexes of the values sorted by ascending amount, one per row
+	 */
+	private final int[] order;
+	private final long maxTransfer;
+	private final long divisor;
+	private final long[] values;
+	private final long capacity;
+	private final FinderConfig config;
+	/**
+	 * the matrix, null until built
+	 */
+	private BitsetTable table;
+
+	/**
+	 * @param amounts
+	 *            the due payments
+	 * @param maxTransfer
+	 *            the largest transfer to be solved, in cents
+	 * @param config
+	 *            tuning parameters
+	 * @throws IllegalArgumentException
+	 */
+	DPBatchFinder(final Amounts amounts, final long maxTransfer,
+			final FinderConfig config) {
+		if (maxTransfer < 0) {
+			throw new IllegalArgumentException("Sum cannot be negative");
+		}
+		this.amounts = amounts;
+		this.order = amounts.ascendingOrder();
+		this.maxTransfer = maxTransfer;
+		final long max = Math.min(maxTransfer, amounts.total());
+		this.divisor = amounts.gcd(max);
+		this.values = amounts.scaled(order, max, divisor);
+		this.capacity = max / divisor;
+		this.config = config;
+	}
+
+	@Override
+	public synchronized FindResult.Status build(final CancellationToken token,
+			final Progress progress) {
+		if (table == null) {
+			final BitsetTable t = new BitsetTable(values, capacity,
+					new SearchMonitor(token, progress));
+			try {
+				t.buildAll(config.getParallelism());
+			} catch (CancelledException e) {
+				return token.isExpired() ? FindResult.Status.TIMEOUT
+						: FindResult.Status.CANCELLED;
+			}
+			table = t;
+		}
+		return FindResult.Status.SOLVED;
+	}
+
+	@Override
+	public BigDecimal[] find(final long transfer) {
+		if (transfer < 0) {
+			throw new IllegalArgumentException("Sum cannot be negative");
+		}
+		final int[] trivial = AbstractFinder.trivialSolution(amounts, transfer);
+		if (trivial != null) {
+			return amounts.values(trivial);
+		}
+		if (transfer > maxTransfer) {
+			throw new IllegalArgumentException("Sum larger than the batch maximum");
+		}
+		if (transfer % divisor != 0) {
+			return new BigDecimal[0];
+		}
+		build(new CancellationToken(), new Progress());
+		final int row = table.firstRow(transfer / divisor);
+		if (row < 0) {
+			return new BigDecimal[0];
+		}
+		final int[] idxes = table.reconstruct(row, transfer / divisor);
+		for (int i = 0; i < idxes.length; i++) {
+			idxes[i] = order[idxes[i]];
+		}
+		return amounts.values(idxes);
+	}
+
+}
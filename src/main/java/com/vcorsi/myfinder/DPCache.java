@@ -0,0 +1,453 @@
+package com.vcorsi.myfinder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Directory of {@link BitsetTable} rows saved by previous runs, so that a
+ * ledger changing by a few payments a day does not rebuild its whole matrix.
+ *
+ * Each file holds the rows of a table and is named after a hash of its
+ * values, that is of the payment multiset. A table is loaded from the file
+ * sharing the longest prefix of values with it: rows only depend on the
+ * values before them, so the rows of the common prefix are mapped from the
+ * file, without being copied in the heap, and only the following ones are
+ * built again. Values are sorted ascending, so a new payment only changes the
+ * rows from its amount on. When the table was loaded from the file of its own
+ * values, the new rows are appended to it; otherwise a new file is written,
+ * copying the common rows from file to file.
+ *
+ * File format, big endian: magic, version (int), divisor, capacity (long),
+ * number of values, number of rows (int), the values (long), the words of
+ * each row (long). The length of a row is not stored: it only holds the bits
+ * up to the sum of the values before it. Files with another magic or
+ * version, or whose header does not match their size, are ignored. At most
+ * {@link #MAX_FILES} files are kept, the least recently used are deleted.
+ *
+ * Cache failures never fail a search: the table is just built from scratch.
+ *
+ * @author vladimiro
+ *
+ */
+final class DPCache {
+
+	static final int MAGIC = 0x41444450;
+	static final int VERSION = 2;
+	static final int MAX_FILES = 16;
+	static final String SUFFIX = ".dp";
+
+	/**
+	 * Bytes mapped at once when reading rows
+	 */
+	private static final long WINDOW = 1 << 30;
+	private static final int HEADER = 4 + 4 + 8 + 8 + 4 + 4;
+	/**
+	 * position of the number of rows in the header
+	 */
+	private static final int ROWS_POSITION = HEADER - 4;
+
+	private final Path directory;
+	/**
+	 * the file the last table was loaded from, null if none
+	 */
+	private Path loaded;
+	/**
+	 * the rows of the last table taken from the loaded file
+	 */
+	private int loadedRows;
+	/**
+	 * the bytes of each of these rows in the loaded file, null for the rows
+	 * copied in the heap
+	 */
+	private ByteBuffer[] mappedRows;
+
+	/**
+	 * @param directory
+	 *            where the files are kept, created if needed
+	 */
+	DPCache(final Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @param values
+	 *            the values of the table, one per row
+	 * @param divisor
+	 *            the divisor the values were scaled by
+	 * @param capacity
+	 *            the least capacity of the table
+	 * @param monitor
+	 *            told about the rows built from now on
+	 * @return a table of values, with the rows found in the cache already
+	 *         built. Its capacity may be larger than the given one.
+	 */
+	BitsetTable load(final long[] values, final long divisor,
+			final long capacity, final SearchMonitor monitor) {
+		try {
+			Path best = null;
+			int bestPrefix = 0;
+			if (Files.isDirectory(directory)) {
+				try (DirectoryStream<Path> files = Files.newDirectoryStream(
+						directory, "*" + SUFFIX)) {
+					for (Path file : files) {
+						final int prefix = commonRows(file, values, divisor,
+								capacity);
+						if (prefix > bestPrefix) {
+							best = file;
+							bestPrefix = prefix;
+						}
+					}
+				}
+			}
+			if (best != null) {
+				final BitsetTable table = read(best, values, bestPrefix, monitor);
+				Files.setLastModifiedTime(best,
+						FileTime.fromMillis(System.currentTimeMillis()));
+				loaded = best;
+				loadedRows = bestPrefix;
+				return table;
+			}
+		} catch (IOException | RuntimeException e) {
+			// unreadable cache: build from scratch
+		}
+		loaded = null;
+		loadedRows = 0;
+		mappedRows = null;
+		return new BitsetTable(values, capacity, monitor);
+	}
+
+	/**
+	 * Saves the rows built so far: appends the new ones to the file the table
+	 * was loaded from if it has the same values, otherwise replaces the file
+	 * of the same values.
+	 *
+	 * @param table
+	 *            the table returned by the last {@link #load}
+	 */
+	void save(final BitsetTable table, final long divisor) {
+		try {
+			Files.createDirectories(directory);
+			final Path file = directory.resolve(String.format("%016x",
+					hash(table.values(), divisor)) + SUFFIX);
+			if (file.equals(loaded) && append(file, table)) {
+				return;
+			}
+			final Path temp = Files.createTempFile(directory, "dp", ".tmp");
+			try {
+				write(temp, table, divisor);
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+			evict();
+		} catch (IOException | RuntimeException e) {
+			// the cache is only an optimization
+		}
+	}
+
+	/**
+	 * FNV-1a of the values and divisor
+	 */
+	static long hash(final long[] values, final long divisor) {
+		long hash = 0xcbf29ce484222325L;
+		hash = (hash ^ divisor) * 0x100000001b3L;
+		for (long v : values) {
+			hash = (hash ^ v) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * @return the number of rows of file which can be reused for values, row
+	 *         0 included; 0 if no value is shared, since row 0 is rebuilt for
+	 *         free
+	 */
+	private static int commonRows(final Path file, final long[] values,
+			final long divisor, final long capacity) throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			final Header header = Header.read(channel);
+			if (header == null || header.divisor != divisor
+					|| header.capacity < capacity) {
+				return 0;
+			}
+			int prefix = 0;
+			final int max = Math.min(Math.min(header.values.capacity(),
+					values.length), header.numOfRows - 1);
+			while (prefix < max && header.values.get(prefix) == values[prefix]) {
+				prefix++;
+			}
+			return prefix == 0 ? 0 : prefix + 1;
+		}
+	}
+
+	/**
+	 * Maps the first rows of file, a window of rows at a time. Rows larger
+	 * than a window are copied in the heap instead.
+	 */
+	private BitsetTable read(final Path file, final long[] values,
+			final int numOfRows, final SearchMonitor monitor)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			final Header header = Header.read(channel);
+			if (header == null || header.numOfRows < numOfRows) {
+				throw new IOException("Invalid cache file");
+			}
+			final long end = header.offsets[numOfRows];
+			final LongBuffer[] rows = new LongBuffer[numOfRows];
+			mappedRows = new ByteBuffer[numOfRows];
+			MappedByteBuffer window = null;
+			long windowStart = 0;
+			for (int i = 0; i < numOfRows; i++) {
+				final long start = header.offsets[i];
+				final long length = header.offsets[i + 1] - start;
+				if (length > WINDOW) {
+					final long[] row = new long[(int) (length / 8)];
+					for (int done = 0; done < row.length;) {
+						final int n = (int) Math.min(row.length - done,
+								WINDOW / 8);
+						channel.map(FileChannel.MapMode.READ_ONLY,
+								start + 8L * done, 8L * n).asLongBuffer()
+								.get(row, done, n);
+						done += n;
+					}
+					rows[i] = LongBuffer.wrap(row);
+					continue;
+				}
+				if (window == null
+						|| start + length > windowStart + window.capacity()) {
+					windowStart = start;
+					window = channel.map(FileChannel.MapMode.READ_ONLY, start,
+							Math.min(WINDOW, end - start));
+				}
+				final ByteBuffer view = window.duplicate();
+				view.position((int) (start - windowStart));
+				view.limit((int) (start - windowStart + length));
+				mappedRows[i] = view.slice();
+				rows[i] = mappedRows[i].asLongBuffer();
+			}
+			return new BitsetTable(values, header.capacity, rows, monitor);
+		}
+	}
+
+	/**
+	 * Appends the rows built since the table was loaded to file, then counts
+	 * them in its header: a file left with rows beyond its count is still
+	 * valid.
+	 *
+	 * @return false if file is no longer the one the table was loaded from
+	 */
+	private boolean append(final Path file, final BitsetTable table)
+			throws IOException {
+		final long[] values = table.values();
+		final int numOfRows = table.builtRows();
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			final Header header = Header.read(channel);
+			if (header == null || header.numOfRows != loadedRows
+					|| header.capacity != table.capacity()
+					|| header.values.capacity() != values.length) {
+				return false;
+			}
+			for (int i = 0; i < values.length; i++) {
+				if (header.values.get(i) != values[i]) {
+					return false;
+				}
+			}
+			channel.position(header.offsets[loadedRows]);
+			final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+			for (int i = loadedRows; i < numOfRows; i++) {
+				for (long word : table.row(i)) {
+					put(channel, buffer, 8).putLong(word);
+				}
+			}
+			flush(channel, buffer);
+			channel.force(false);
+			buffer.putInt(numOfRows).flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, ROWS_POSITION + buffer.position());
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes all the built rows of table, copying the mapped ones from the
+	 * loaded file.
+	 */
+	private void write(final Path file, final BitsetTable table,
+			final long divisor) throws IOException {
+		final long[] values = table.values();
+		final int numOfRows = table.builtRows();
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+			buffer.putInt(MAGIC).putInt(VERSION).putLong(divisor)
+					.putLong(table.capacity()).putInt(values.length)
+					.putInt(numOfRows);
+			for (long v : values) {
+				put(channel, buffer, 8).putLong(v);
+			}
+			for (int i = 0; i < numOfRows; i++) {
+				if (i < loadedRows && mappedRows[i] != null) {
+					flush(channel, buffer);
+					final ByteBuffer row = mappedRows[i].duplicate();
+					while (row.hasRemaining()) {
+						channel.write(row);
+					}
+					continue;
+				}
+				for (long word : table.row(i)) {
+					put(channel, buffer, 8).putLong(word);
+				}
+			}
+			flush(channel, buffer);
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * @return buffer, flushed to channel if it has less than size bytes left
+	 */
+	private static ByteBuffer put(final FileChannel channel,
+			final ByteBuffer buffer, final int size) throws IOException {
+		if (buffer.remaining() < size) {
+			flush(channel, buffer);
+		}
+		return buffer;
+	}
+
+	private static void flush(final FileChannel channel,
+			final ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Header and values of a file, checked against its size before anything
+	 * is allocated from them.
+	 */
+	private static final class Header {
+
+		private final long divisor;
+		private final long capacity;
+		private final LongBuffer values;
+		private final int numOfRows;
+		/**
+		 * offsets[i] is the position of row i in the file,
+		 * offsets[numOfRows] the end of the last row
+		 */
+		private final long[] offsets;
+
+		private Header(final long divisor, final long capacity,
+				final LongBuffer values, final int numOfRows,
+				final long[] offsets) {
+			this.divisor = divisor;
+			this.capacity = capacity;
+			this.values = values;
+			this.numOfRows = numOfRows;
+			this.offsets = offsets;
+		}
+
+		/**
+		 * @return the header of the file, null if it is not a valid file of
+		 *         this version
+		 */
+		static Header read(final FileChannel channel) throws IOException {
+			final long size = channel.size();
+			if (size < HEADER) {
+				return null;
+			}
+			final ByteBuffer header = channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, HEADER);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				return null;
+			}
+			final long divisor = header.getLong();
+			final long capacity = header.getLong();
+			final int numOfValues = header.getInt();
+			final int numOfRows = header.getInt();
+			if (divisor <= 0 || capacity < 0
+					|| capacity > BitsetTable.MAX_CAPACITY || numOfValues < 0
+					|| numOfRows < 1 || numOfRows > numOfValues + 1L
+					|| HEADER + 8L * numOfValues > size) {
+				return null;
+			}
+			final LongBuffer values = channel.map(
+					FileChannel.MapMode.READ_ONLY, HEADER, 8L * numOfValues)
+					.asLongBuffer();
+			final long[] offsets = new long[numOfRows + 1];
+			offsets[0] = HEADER + 8L * numOfValues;
+			long prefixSum = 0;
+			for (int i = 0; i < numOfRows; i++) {
+				if (i > 0) {
+					final long v = values.get(i - 1);
+					if (v < 0) {
+						return null;
+					}
+					prefixSum = v > capacity - prefixSum ? capacity
+							: prefixSum + v;
+				}
+				offsets[i + 1] = offsets[i] + 8L * BitsetTable.words(prefixSum);
+				if (offsets[i + 1] > size) {
+					return null;
+				}
+			}
+			return new Header(divisor, capacity, values, numOfRows, offsets);
+		}
+
+	}
+
+	/**
+	 * Deletes the least recently used files beyond {@link #MAX_FILES}.
+	 */
+	private void evict() throws IOException {
+		final List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+				"*" + SUFFIX)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		if (files.size() <= MAX_FILES) {
+			return;
+		}
+		final FileTime[] times = new FileTime[files.size()];
+		for (int i = 0; i < times.length; i++) {
+			times[i] = Files.getLastModifiedTime(files.get(i));
+		}
+		final List<Integer> byTime = new ArrayList<>();
+		for (int i = 0; i < times.length; i++) {
+			byTime.add(i);
+		}
+		Collections.sort(byTime, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return times[o1].compareTo(times[o2]);
+			}
+		});
+		for (int i = 0; i < files.size() - MAX_FILES; i++) {
+			Files.deleteIfExists(files.get(byTime.get(i)));
+		}
+	}
+
+}
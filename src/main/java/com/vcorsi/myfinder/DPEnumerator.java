@@ -0,0 +1,115 @@
+package com.vcorsi.myfinder;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * A {@link SolutionEnumerator} walking every path of the {@link DPFinder}
+ * matrix instead of a single one: every branch of the walk leads to a
+ * solution, so each one costs at most a step per payment. The matrix is built
+ * on the first enumeration and kept for the next ones.
+ * 
+ * Solutions are counted without the matrix, by a dynamic programming array
+ * holding, for every sum up to the bank transfer, the number of subsets
+ * reaching it: O(|V| * S) time and O(S) memory.
+ * 
+ * @author vladimiro
+ * 
+ */
+class DPEnumerator extends AbstractEnumerator {
+
+	/**
+	 * Largest length of a Java array
+	 */
+	private static final long MAX_COUNTED_SUM = Integer.MAX_VALUE - 8;
+
+	/**
+	 * indexes of the values sorted by ascending amount, one per row
+	 */
+	private final int[] order;
+	private final FinderConfig config;
+	/**
+	 * greatest common divisor of the amounts, dividing amounts and sum
+	 */
+	private final long divisor;
+	private BitsetTable table;
+
+	DPEnumerator(final Amounts amounts, final long sum,
+			final FinderConfig config) {
+		super(amounts, sum);
+		if (sum > BitsetTable.MAX_CAPACITY) {
+			throw new IllegalArgumentException("Sum too large");
+		}
+		this.order = amounts.ascendingOrder();
+		this.config = config;
+		this.divisor = sum == 0 ? 1 : amounts.gcd(sum);
+	}
+
+	@Override
+	protected Iterator<int[]> subsets() {
+		if (sum % divisor != 0) {
+			return Collections.<int[]> emptyList().iterator();
+		}
+		if (table == null) {
+			table = new BitsetTable(amounts.scaled(order, sum, divisor), sum
+					/ divisor);
+			table.buildAll(config.getParallelism());
+		}
+		final Iterator<int[]> rows = table.subsets(order.length, sum / divisor);
+		return new Iterator<int[]>() {
+
+			@Override
+			public boolean hasNext() {
+				return rows.hasNext();
+			}
+
+			@Override
+			public int[] next() {
+				final int[] idxes = rows.next();
+				for (int i = 0; i < idxes.length; i++) {
+					idxes[i] = order[idxes[i]];
+				}
+				return idxes;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Counts with a single array updated in place, from the largest sum down
+	 * so that each value is used at most once. Counts saturate at
+	 * Long.MAX_VALUE. Sums too large for an array are counted by enumerating
+	 * the solutions.
+	 */
+	@Override
+	public long count() {
+		if (sum > amounts.total() || sum % divisor != 0) {
+			return 0;
+		}
+		final long target = sum / divisor;
+		if (target >= MAX_COUNTED_SUM) {
+			return super.count();
+		}
+		final long[] counts = new long[(int) target + 1];
+		counts[0] = 1;
+		long prefixSum = 0;
+		for (long value : amounts.scaled(order, sum, divisor)) {
+			prefixSum = value > target - prefixSum ? target : prefixSum
+					+ value;
+			for (int s = (int) prefixSum; s >= value; s--) {
+				final long c = counts[s] + counts[s - (int) value];
+				counts[s] = c < 0 ? Long.MAX_VALUE : c;
+			}
+		}
+		// the empty subset is not a solution
+		if (sum == 0) {
+			return counts[0] == Long.MAX_VALUE ? Long.MAX_VALUE : counts[0] - 1;
+		}
+		return counts[(int) target];
+	}
+
+}
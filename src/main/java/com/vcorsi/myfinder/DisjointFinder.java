@@ -0,0 +1,441 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An {@link AllocationFinder} searching the transfers one at a time, most
+ * constrained first, and backtracking over the subsets of the still free
+ * payments settling each transfer.
+ * 
+ * At each step a {@link BitsetTable} is built over the free payments, sorted
+ * by ascending amount and divided by their greatest common divisor, up to the
+ * largest transfer still to be settled. The step fails early if the free
+ * payments add up to less than the transfers or if any transfer is no longer
+ * reachable. Otherwise the transfer reachable the latest in the table, that
+ * is the one needing the largest payments, is settled first, trying its
+ * subsets one after the other until the remaining transfers can be settled
+ * too, so the search is complete. Only a batch of subsets is kept while they
+ * are tried, and the table is released: a single table is held at a time,
+ * whatever the depth of the search.
+ * 
+ * When the table does not fit in the heap budget the largest transfer is
+ * settled first instead, with the subsets visited by a
+ * {@link SearchEnumerator}, whose memory only depends on the number of
+ * payments.
+ * 
+ * Steps found to fail are remembered: payments of the same amount, and
+ * transfers of the same amount, are interchangeable, so a step is identified
+ * by how many payments of each amount are used and how many transfers of
+ * each amount are settled. The many subsets differing only by equal payments
+ * then lead to the same step, which is searched once. The search stops when
+ * its cancellation token is cancelled or expires.
+ * 
+ * @author vladimiro
+ * 
+ */
+class DisjointFinder implements AllocationFinder {
+
+	/**
+	 * Words of the failed steps remembered, beyond which no more steps are
+	 * remembered: 32MB
+	 */
+	static final int MEMO_MAX_WORDS = 1 << 22;
+	/**
+	 * Subsets taken from a table before it is released, at first and at most
+	 */
+	private static final int FIRST_BATCH = 64;
+	private static final int MAX_BATCH = 1024;
+
+	private final Amounts amounts;
+	private final long[] transfers;
+	private final FinderConfig config;
+	/**
+	 * false if the tables do not fit in the heap budget
+	 */
+	private final boolean tables;
+	/**
+	 * indexes of the payments sorted by ascending amount
+	 */
+	private final int[] order;
+	/**
+	 * indexes of the transfers sorted by ascending amount
+	 */
+	private final int[] transferOrder;
+	/**
+	 * paymentRuns[k] is the first position in order of the payments of the
+	 * same amount as the one at position k, and so is transferRuns[k] in
+	 * transferOrder
+	 */
+	private final int[] paymentRuns;
+	private final int[] transferRuns;
+	private final boolean[] used;
+	private final int[][] solution;
+	private final Set<Step> failed = new HashSet<>();
+	private long failedWords;
+
+	/**
+	 * @param amounts
+	 *            the due payments
+	 * @param transfers
+	 *            the bank transfers in cents. A non empty array of positive
+	 *            numbers.
+	 * @param config
+	 *            tuning parameters
+	 * @param tables
+	 *            true to choose the transfers with a {@link BitsetTable},
+	 *            false to search their subsets without one
+	 * @throws IllegalArgumentException
+	 */
+	DisjointFinder(final Amounts amounts, final long[] transfers,
+			final FinderConfig config, final boolean tables) {
+		if (transfers == null) {
+			throw new NullPointerException("Transfers cannot be null");
+		}
+		if (transfers.length == 0) {
+			throw new IllegalArgumentException("Transfers cannot be empty");
+		}
+		for (long t : transfers) {
+			if (t <= 0) {
+				throw new IllegalArgumentException("Transfers must be positive");
+			}
+		}
+		this.amounts = amounts;
+		this.transfers = transfers.clone();
+		this.config = config;
+		this.tables = tables;
+		this.order = amounts.ascendingOrder();
+		this.transferOrder = Amounts.of(transfers).ascendingOrder();
+		final long[] cents = new long[amounts.size()];
+		for (int i = 0; i < cents.length; i++) {
+			cents[i] = amounts.cents(i);
+		}
+		this.paymentRuns = runs(order, cents);
+		this.transferRuns = runs(transferOrder, this.transfers);
+		this.used = new boolean[amounts.size()];
+		this.solution = new int[transfers.length][];
+	}
+
+	@Override
+	public BigDecimal[][] find() {
+		return find(new CancellationToken(), new Progress()).getSolutions();
+	}
+
+	@Override
+	public AllocationResult find(final CancellationToken token,
+			final Progress progress) {
+		Arrays.fill(used, false);
+		Arrays.fill(solution, null);
+		failed.clear();
+		failedWords = 0;
+		final SearchMonitor monitor = new SearchMonitor(token, progress);
+		final SearchMonitor.Counter nodes = monitor.counter();
+		try {
+			if (Cents.sum(transfers) > amounts.total()
+					|| !settle(transfers.length, monitor, nodes)) {
+				return new AllocationResult(FindResult.Status.NO_SOLUTION,
+						new BigDecimal[0][]);
+			}
+		} catch (CancelledException e) {
+			return new AllocationResult(
+					token.isExpired() ? FindResult.Status.TIMEOUT
+							: FindResult.Status.CANCELLED, new BigDecimal[0][]);
+		} finally {
+			failed.clear();
+			nodes.flush();
+		}
+		final BigDecimal[][] result = new BigDecimal[transfers.length][];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = amounts.values(solution[i]);
+		}
+		return new AllocationResult(FindResult.Status.SOLVED, result);
+	}
+
+	/**
+	 * @param unsettled
+	 *            number of transfers without a solution
+	 * @param nodes
+	 *            counts the subsets tried
+	 * @return true if all the transfers without a solution could be settled
+	 *         with free payments
+	 * @throws CancelledException
+	 */
+	private boolean settle(final int unsettled, final SearchMonitor monitor,
+			final SearchMonitor.Counter nodes) {
+		if (unsettled == 0) {
+			return true;
+		}
+		final Step step = step();
+		if (failed.contains(step)) {
+			nodes.prune();
+			return false;
+		}
+		final Choice choice = choose(monitor);
+		if (choice != null) {
+			while (choice.subsets.hasNext()) {
+				nodes.visit();
+				final int[] subset = choice.subsets.next();
+				for (int i = 0; i < subset.length; i++) {
+					subset[i] = choice.free[subset[i]];
+					used[subset[i]] = true;
+				}
+				solution[choice.transfer] = subset;
+				if (settle(unsettled - 1, monitor, nodes)) {
+					return true;
+				}
+				solution[choice.transfer] = null;
+				for (int idx : subset) {
+					used[idx] = false;
+				}
+			}
+		}
+		if (failedWords + step.words.length <= MEMO_MAX_WORDS) {
+			failed.add(step);
+			failedWords += step.words.length;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the current step: bits of the payments used, then of the
+	 *         transfers settled, in ascending order of amount. Within a run
+	 *         of equal amounts the first ones are taken as the used ones.
+	 */
+	private Step step() {
+		final int paymentBits = ((order.length + 63) >>> 6) << 6;
+		final long[] words = new long[(paymentBits + transferOrder.length + 63) >>> 6];
+		int count = 0;
+		for (int k = 0; k < order.length; k++) {
+			if (used[order[k]]) {
+				count++;
+			}
+			if (k == order.length - 1 || paymentRuns[k + 1] != paymentRuns[k]) {
+				setBits(words, paymentRuns[k], count);
+				count = 0;
+			}
+		}
+		for (int k = 0; k < transferOrder.length; k++) {
+			if (solution[transferOrder[k]] != null) {
+				count++;
+			}
+			if (k == transferOrder.length - 1
+					|| transferRuns[k + 1] != transferRuns[k]) {
+				setBits(words, paymentBits + transferRuns[k], count);
+				count = 0;
+			}
+		}
+		return new Step(words);
+	}
+
+	private static void setBits(final long[] words, final int from,
+			final int count) {
+		for (int j = from; j < from + count; j++) {
+			words[j >>> 6] |= 1L << j;
+		}
+	}
+
+	/**
+	 * @param idxes
+	 *            indexes of values, sorted by ascending value
+	 * @return for each position, the first position of the run of equal
+	 *         values containing it
+	 */
+	private static int[] runs(final int[] idxes, final long[] values) {
+		final int[] result = new int[idxes.length];
+		for (int k = 1; k < idxes.length; k++) {
+			result[k] = values[idxes[k]] == values[idxes[k - 1]] ? result[k - 1]
+					: k;
+		}
+		return result;
+	}
+
+	/**
+	 * Chooses the next transfer to settle.
+	 * 
+	 * @return the chosen transfer with the subsets of free payments settling
+	 *         it, null if some transfer cannot be settled any more
+	 * @throws CancelledException
+	 */
+	private Choice choose(final SearchMonitor monitor) {
+		// free payments, sorted ascending
+		final int[] free = new int[order.length];
+		int numOfFree = 0;
+		long freeTotal = 0;
+		for (int idx : order) {
+			if (!used[idx]) {
+				free[numOfFree++] = idx;
+				freeTotal += amounts.cents(idx);
+			}
+		}
+		long maxTransfer = 0;
+		long transfersTotal = 0;
+		for (int i = 0; i < transfers.length; i++) {
+			if (solution[i] == null) {
+				maxTransfer = Math.max(maxTransfer, transfers[i]);
+				transfersTotal += transfers[i];
+			}
+		}
+		if (transfersTotal > freeTotal) {
+			return null;
+		}
+		final long[] freeCents = new long[numOfFree];
+		for (int i = 0; i < numOfFree; i++) {
+			freeCents[i] = amounts.cents(free[i]);
+		}
+		final Amounts freeAmounts = Amounts.of(freeCents);
+		final long divisor = freeAmounts.gcd(maxTransfer);
+		for (int i = 0; i < transfers.length; i++) {
+			if (solution[i] == null && transfers[i] % divisor != 0) {
+				return null;
+			}
+		}
+		if (!tables) {
+			// the largest transfer has the fewest subsets to search
+			int chosen = -1;
+			for (int i = 0; i < transfers.length; i++) {
+				if (solution[i] == null
+						&& (chosen < 0 || transfers[i] > transfers[chosen])) {
+					chosen = i;
+				}
+			}
+			return new Choice(chosen, free, new SearchEnumerator(freeAmounts,
+					transfers[chosen]).subsets());
+		}
+		final long[] scaled = new long[numOfFree];
+		for (int i = 0; i < numOfFree; i++) {
+			scaled[i] = freeCents[i] > maxTransfer ? freeCents[i] : freeCents[i]
+					/ divisor;
+		}
+		final BitsetTable table = new BitsetTable(scaled, maxTransfer / divisor,
+				monitor);
+		table.buildAll(config.getParallelism());
+		// the most constrained transfer becomes reachable the latest
+		int chosen = -1;
+		int chosenRow = -1;
+		for (int i = 0; i < transfers.length; i++) {
+			if (solution[i] != null) {
+				continue;
+			}
+			final int row = table.firstRow(transfers[i] / divisor);
+			if (row < 0) {
+				return null;
+			}
+			if (row > chosenRow
+					|| (row == chosenRow && transfers[i] > transfers[chosen])) {
+				chosen = i;
+				chosenRow = row;
+			}
+		}
+		return new Choice(chosen, free, new TableSubsets(table,
+				transfers[chosen] / divisor, monitor));
+	}
+
+	/**
+	 * A transfer to settle and the subsets settling it, as indexes in free
+	 */
+	private static final class Choice {
+		final int transfer;
+		final int[] free;
+		final Iterator<int[]> subsets;
+
+		Choice(final int transfer, final int[] free,
+				final Iterator<int[]> subsets) {
+			this.transfer = transfer;
+			this.free = free;
+			this.subsets = subsets;
+		}
+	}
+
+	/**
+	 * The subsets of a {@link BitsetTable} summing to target, taken in
+	 * batches so that the table can be released before they are tried. When
+	 * a batch is used up the table is built again, up to target only, and
+	 * the subsets already taken are skipped; batches double so that the
+	 * table is built a logarithmic number of times.
+	 */
+	private final class TableSubsets implements Iterator<int[]> {
+
+		private final long[] values;
+		private final long target;
+		private final SearchMonitor monitor;
+		private final Deque<int[]> batch = new ArrayDeque<>();
+		private int batchSize = FIRST_BATCH;
+		private long taken;
+		private boolean exhausted;
+
+		TableSubsets(final BitsetTable table, final long target,
+				final SearchMonitor monitor) {
+			this.values = table.values();
+			this.target = target;
+			this.monitor = monitor;
+			take(table);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (batch.isEmpty() && !exhausted) {
+				final BitsetTable table = new BitsetTable(values, target,
+						monitor);
+				table.buildAll(config.getParallelism());
+				take(table);
+			}
+			return !batch.isEmpty();
+		}
+
+		@Override
+		public int[] next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return batch.poll();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private void take(final BitsetTable table) {
+			final Iterator<int[]> subsets = table.subsets(values.length, target);
+			for (long k = 0; k < taken; k++) {
+				subsets.next();
+			}
+			while (batch.size() < batchSize && subsets.hasNext()) {
+				batch.add(subsets.next());
+			}
+			taken += batch.size();
+			exhausted = !subsets.hasNext();
+			batchSize = Math.min(2 * batchSize, MAX_BATCH);
+		}
+	}
+
+	/**
+	 * Payments used and transfers settled, up to equal amounts
+	 */
+	private static final class Step {
+		final long[] words;
+		private final int hash;
+
+		Step(final long[] words) {
+			this.words = words;
+			this.hash = Arrays.hashCode(words);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return obj instanceof Step && Arrays.equals(words, ((Step) obj).words);
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+
+/**
+ * Outcome of {@link CancellableFinder#find(CancellationToken, Progress)}.
+ * 
+ * @author vladimiro
+ * 
+ */
+public class FindResult {
+
+	public enum Status {
+		/**
+		 * a subset of the due payments sums up to the bank transfer
+		 */
+		SOLVED,
+		/**
+		 * no subset of the due payments sums up to the bank transfer
+		 */
+		NO_SOLUTION,
+		/**
+		 * the deadline passed before the search ended
+		 */
+		TIMEOUT,
+		/**
+		 * the search was cancelled before it ended
+		 */
+		CANCELLED
+	}
+
+	private final Status status;
+	private final BigDecimal[] solution;
+
+	FindResult(final Status status, final BigDecimal[] solution) {
+		this.status = status;
+		this.solution = solution;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the due payments summing up to the bank transfer, empty unless
+	 *         the status is {@link Status#SOLVED}
+	 */
+	public BigDecimal[] getSolution() {
+		return solution;
+	}
+
+}
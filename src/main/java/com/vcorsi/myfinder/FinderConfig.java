@@ -0,0 +1,175 @@
+package com.vcorsi.myfinder;
+
+import java.nio.file.Path;
+
+/**
+ * Tuning parameters of the finders. The default configuration runs every
+ * finder on the calling thread.
+ * 
+ * @author vladimiro
+ * 
+ */
+public class FinderConfig {
+
+	private int parallelism = 1;
+	private int splitDepth = 0;
+	private long heapBudget = 0;
+	private boolean calibrate = false;
+	private boolean sparse = false;
+	private Path cacheDirectory = null;
+	private Path offHeapDirectory = null;
+
+	/**
+	 * @return the number of threads a finder may use
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism
+	 *            the number of threads a finder may use, at least 1
+	 * @return this configuration
+	 * @throws IllegalArgumentException
+	 */
+	public FinderConfig setParallelism(final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * @return the depth of the {@link SubsetFinder} search tree down to which
+	 *         branches are split into parallel tasks. When 0 it is chosen
+	 *         from the parallelism.
+	 */
+	public int getSplitDepth() {
+		if (splitDepth == 0) {
+			// about 16 tasks per thread let work stealing balance the load
+			return 32 - Integer.numberOfLeadingZeros(parallelism - 1) + 4;
+		}
+		return splitDepth;
+	}
+
+	/**
+	 * @param splitDepth
+	 *            the depth of the search tree down to which branches are split
+	 *            into parallel tasks, 0 to choose it from the parallelism
+	 * @return this configuration
+	 * @throws IllegalArgumentException
+	 */
+	public FinderConfig setSplitDepth(final int splitDepth) {
+		if (splitDepth < 0) {
+			throw new IllegalArgumentException("Split depth cannot be negative");
+		}
+		this.splitDepth = splitDepth;
+		return this;
+	}
+
+	/**
+	 * @return the largest number of bytes a finder chosen by
+	 *         {@link FinderFactory} may need. When 0 it is the heap still
+	 *         available to the JVM.
+	 */
+	public long getHeapBudget() {
+		return heapBudget;
+	}
+
+	/**
+	 * @param heapBudget
+	 *            the largest number of bytes a finder chosen by
+	 *            {@link FinderFactory} may need, 0 for the heap still
+	 *            available to the JVM
+	 * @return this configuration
+	 * @throws IllegalArgumentException
+	 */
+	public FinderConfig setHeapBudget(final long heapBudget) {
+		if (heapBudget < 0) {
+			throw new IllegalArgumentException("Heap budget cannot be negative");
+		}
+		this.heapBudget = heapBudget;
+		return this;
+	}
+
+	/**
+	 * @return true if {@link FinderFactory} measures the speed of each finder
+	 *         on this machine, with a short benchmark the first time a finder
+	 *         is chosen, instead of using default estimates
+	 */
+	public boolean isCalibrate() {
+		return calibrate;
+	}
+
+	/**
+	 * @param calibrate
+	 *            true if {@link FinderFactory} measures the speed of each
+	 *            finder on this machine
+	 * @return this configuration
+	 */
+	public FinderConfig setCalibrate(final boolean calibrate) {
+		this.calibrate = calibrate;
+		return this;
+	}
+
+	/**
+	 * @return true if {@link DPFinder} only stores the reachable sums
+	 *         instead of a bit for every sum up to the bank
+	 *         transfer: faster and smaller when the reachable sums are few,
+	 *         for instance with few large payments
+	 */
+	public boolean isSparse() {
+		return sparse;
+	}
+
+	/**
+	 * @param sparse
+	 *            true if {@link DPFinder} only stores the reachable sums
+	 * @return this configuration
+	 */
+	public FinderConfig setSparse(final boolean sparse) {
+		this.sparse = sparse;
+		return this;
+	}
+
+	/**
+	 * @return the directory where {@link DPFinder} saves its matrix, to
+	 *         reuse it in the next runs, or null if the matrix is not saved
+	 */
+	public Path getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	/**
+	 * @param cacheDirectory
+	 *            the directory where {@link DPFinder} saves its matrix, null
+	 *            not to save it
+	 * @return this configuration
+	 */
+	public FinderConfig setCacheDirectory(final Path cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+		return this;
+	}
+
+	/**
+	 * @return the directory where {@link DPFinder} keeps its matrix in a
+	 *         memory mapped file, outside the heap, or null if the matrix is
+	 *         kept in the heap. The matrix is then neither sparse nor cached.
+	 */
+	public Path getOffHeapDirectory() {
+		return offHeapDirectory;
+	}
+
+	/**
+	 * @param offHeapDirectory
+	 *            the directory where {@link DPFinder} keeps its matrix in a
+	 *            memory mapped file, null to keep it in the heap
+	 * @return this configuration
+	 */
+	public FinderConfig setOffHeapDirectory(final Path offHeapDirectory) {
+		this.offHeapDirectory = offHeapDirectory;
+		return this;
+	}
+
+}
@@ -15,27 +15,272 @@ public class FinderFactory {
 	 *            values representing due payments. A non empty array of non
 	 *            negative numbers.
 	 * @param sum non negative
-	 * @return a Finder object to solve the Accounting Dilemma. Chooses between {@link DPFinder} 
-	 * and {@link SubsetFinder} based on the structure of input: if
-	 * <code>Math.pow(2, numOfPayments) > numOfPayments * sum.unscaledValue().longValue()</code> then
-	 * {@link DPFinder} is used.
+	 * @return a Finder object to solve the Accounting Dilemma, which can be
+	 *         cancelled or bounded in time. Chooses between
+	 *         {@link DPFinder}, {@link RollingDPFinder},
+	 *         {@link MeetInMiddleFinder} and {@link SubsetFinder} the one
+	 *         with the lowest estimated running time among those whose
+	 *         estimated memory fits in the heap budget (see
+	 *         {@link StrategySelector}).
 	 * @throws IllegalArgumentException
 	 */
-	public static Finder finder(final BigDecimal[] duePayments, final BigDecimal sum) {
-		final int numOfPayments = duePayments.length;
-		if(Math.pow(2, numOfPayments) > numOfPayments * sum.unscaledValue().longValue()){
-			return new DPFinder(duePayments, sum);
-		}else{
-			return new SubsetFinder(duePayments, sum);
+	public static CancellableFinder finder(final BigDecimal[] duePayments, final BigDecimal sum) {
+		return finder(Amounts.of(duePayments), Cents.of(sum),
+				new FinderConfig());
+	}
+
+	/**
+	 * @param duePayments
+	 *            due payments in cents. A non empty array of non negative
+	 *            numbers.
+	 * @param sum
+	 *            bank transfer in cents, non negative
+	 * @see #finder(BigDecimal[], BigDecimal)
+	 * @throws IllegalArgumentException
+	 */
+	public static CancellableFinder finder(final long[] duePayments, final long sum) {
+		return finder(duePayments, sum, new FinderConfig());
+	}
+
+	/**
+	 * @param duePayments
+	 *            due payments in cents. A non empty array of non negative
+	 *            numbers.
+	 * @param sum
+	 *            bank transfer in cents, non negative
+	 * @param config
+	 *            tuning parameters of the chosen finder
+	 * @see #finder(BigDecimal[], BigDecimal)
+	 * @throws IllegalArgumentException
+	 */
+	public static CancellableFinder finder(final long[] duePayments, final long sum,
+			final FinderConfig config) {
+		return finder(Amounts.of(duePayments), sum, config);
+	}
+
+	/**
+	 * Reduces the problem (see {@link Reduction}), when that makes it smaller,
+	 * before choosing a finder.
+	 */
+	private static CancellableFinder finder(final Amounts amounts,
+			final long sum, final FinderConfig config) {
+		if (sum < 0) {
+			throw new IllegalArgumentException("Sum cannot be negative");
+		}
+		final Reduction reduction = new Reduction(amounts, sum);
+		if (!reduction.reduces(amounts.size())) {
+			return strategyFinder(amounts, sum, config);
 		}
+		final Amounts items = reduction.items();
+		return new ReducedFinder(amounts, sum, reduction, items == null ? null
+				: strategyFinder(items, reduction.sum(), config));
 	}
-	
+
+	private static AbstractFinder strategyFinder(final Amounts amounts,
+			final long sum, final FinderConfig config) {
+		switch (new StrategySelector(config).select(amounts, sum)) {
+		case DP:
+			return new DPFinder(amounts, sum, config);
+		case ROLLING_DP:
+			return new RollingDPFinder(amounts, sum);
+		case MEET_IN_MIDDLE:
+			return new MeetInMiddleFinder(amounts, sum);
+		default:
+			return new SubsetFinder(amounts, sum, config);
+		}
+	}
+
+	/**
+	 * @param duePayments
+	 *            due payments in cents. A non empty array of non negative
+	 *            numbers.
+	 * @param maxTransfer
+	 *            the largest bank transfer that will be solved, in cents
+	 * @param config
+	 *            tuning parameters
+	 * @return a BatchFinder solving any transfer up to maxTransfer from a
+	 *         matrix built once.
+	 * @throws IllegalArgumentException
+	 *             also if the matrix does not fit in the heap budget
+	 */
+	public static BatchFinder batchFinder(final long[] duePayments,
+			final long maxTransfer, final FinderConfig config) {
+		final Amounts amounts = Amounts.of(duePayments);
+		if (maxTransfer >= 0
+				&& !new StrategySelector(config).fitsTable(amounts,
+						Math.min(maxTransfer, amounts.total()))) {
+			throw new IllegalArgumentException(
+					"Largest transfer too large for the heap");
+		}
+		return new DPBatchFinder(amounts, maxTransfer, config);
+	}
+
+	/**
+	 * @param duePayments
+	 *            due payments in cents. A non empty array of non negative
+	 *            numbers.
+	 * @param transfers
+	 *            bank transfers in cents. A non empty array of positive
+	 *            numbers.
+	 * @param config
+	 *            tuning parameters
+	 * @return an AllocationFinder settling all the transfers with disjoint
+	 *         subsets of the due payments, searching their subsets without a
+	 *         table if the table up to the largest transfer does not fit in
+	 *         the heap budget.
+	 * @throws IllegalArgumentException
+	 */
+	public static AllocationFinder allocationFinder(final long[] duePayments,
+			final long[] transfers, final FinderConfig config) {
+		return allocationFinder(Amounts.of(duePayments), transfers, config);
+	}
+
+	public static AllocationFinder allocationFinder(
+			final BigDecimal[] duePayments, final BigDecimal[] transfers) {
+		final long[] cents = new long[transfers.length];
+		for (int i = 0; i < cents.length; i++) {
+			cents[i] = Cents.of(transfers[i]);
+		}
+		return allocationFinder(Amounts.of(duePayments), cents,
+				new FinderConfig());
+	}
+
+	private static AllocationFinder allocationFinder(final Amounts amounts,
+			final long[] transfers, final FinderConfig config) {
+		long maxTransfer = 0;
+		if (transfers != null) {
+			for (long t : transfers) {
+				maxTransfer = Math.max(maxTransfer, t);
+			}
+		}
+		return new DisjointFinder(amounts, transfers, config,
+				new StrategySelector(config).fitsTable(amounts,
+						Math.min(maxTransfer, amounts.total())));
+	}
+
+	/**
+	 * @param duePayments
+	 *            due payments in cents. A non empty array of non negative
+	 *            numbers.
+	 * @param sum
+	 *            bank transfer in cents, non negative
+	 * @param config
+	 *            tuning parameters
+	 * @return a SolutionEnumerator listing or counting all the solutions.
+	 *         Solutions are read from the {@link DPFinder} matrix when it fits
+	 *         in the heap budget, otherwise from the {@link SubsetFinder}
+	 *         search tree.
+	 * @throws IllegalArgumentException
+	 */
+	public static SolutionEnumerator enumerator(final long[] duePayments,
+			final long sum, final FinderConfig config) {
+		return enumerator(Amounts.of(duePayments), sum, config);
+	}
+
+	public static SolutionEnumerator enumerator(final BigDecimal[] duePayments,
+			final BigDecimal sum) {
+		return enumerator(Amounts.of(duePayments), Cents.of(sum),
+				new FinderConfig());
+	}
+
+	/**
+	 * @param duePayments
+	 *            due payments in cents. A non empty array of non negative
+	 *            numbers.
+	 * @param sum
+	 *            bank transfer in cents, non negative
+	 * @param tolerance
+	 *            the largest difference in cents between the transfer and the
+	 *            sum of the solution, non negative
+	 * @param config
+	 *            tuning parameters
+	 * @return a CancellableFinder choosing the subset whose sum is the closest
+	 *         to the transfer within the tolerance (see
+	 *         {@link ToleranceFinder}).
+	 * @throws IllegalArgumentException
+	 *             also if the matrix up to the transfer plus the tolerance
+	 *             does not fit in the heap budget
+	 */
+	public static CancellableFinder toleranceFinder(final long[] duePayments,
+			final long sum, final long tolerance, final FinderConfig config) {
+		return toleranceFinder(Amounts.of(duePayments), sum, tolerance, config);
+	}
+
+	public static CancellableFinder toleranceFinder(
+			final BigDecimal[] duePayments, final BigDecimal sum,
+			final BigDecimal tolerance) {
+		return toleranceFinder(Amounts.of(duePayments), Cents.of(sum),
+				Cents.of(tolerance), new FinderConfig());
+	}
+
+	private static CancellableFinder toleranceFinder(final Amounts amounts,
+			final long sum, final long tolerance, final FinderConfig config) {
+		final ToleranceFinder finder = new ToleranceFinder(amounts, sum,
+				tolerance, config);
+		if (!new StrategySelector(config).fitsTable(amounts, finder.capacity())) {
+			throw new IllegalArgumentException(
+					"Transfer plus tolerance too large for the heap");
+		}
+		return finder;
+	}
+
+	/**
+	 * @param duePayments
+	 *            due payments in cents. A non empty array of non negative
+	 *            numbers.
+	 * @param sum
+	 *            bank transfer in cents, non negative
+	 * @param epsilon
+	 *            the relative error, in (0, 1]
+	 * @return an ApproximateFinder whose running time depends on the
+	 *         logarithm of the transfer only (see {@link TrimmedListFinder}),
+	 *         for transfers too large for an exact finder.
+	 * @throws IllegalArgumentException
+	 */
+	public static ApproximateFinder approximateFinder(
+			final long[] duePayments, final long sum, final double epsilon) {
+		return new TrimmedListFinder(Amounts.of(duePayments), sum, epsilon);
+	}
+
+	public static ApproximateFinder approximateFinder(
+			final BigDecimal[] duePayments, final BigDecimal sum,
+			final double epsilon) {
+		return new TrimmedListFinder(Amounts.of(duePayments), Cents.of(sum),
+				epsilon);
+	}
+
+	private static SolutionEnumerator enumerator(final Amounts amounts,
+			final long sum, final FinderConfig config) {
+		if (new StrategySelector(config).fitsEnumerator(amounts, sum)) {
+			return new DPEnumerator(amounts, sum, config);
+		}
+		return new SearchEnumerator(amounts, sum);
+	}
+
 	public static SubsetFinder subsetFinder(final BigDecimal[] duePayments, final BigDecimal sum){
 		return new SubsetFinder(duePayments, sum);
 	}
+
+	public static SubsetFinder subsetFinder(final BigDecimal[] duePayments,
+			final BigDecimal sum, final FinderConfig config) {
+		return new SubsetFinder(Amounts.of(duePayments), Cents.of(sum), config);
+	}
 	
 	public static DPFinder dpFinder(final BigDecimal[] duePayments, final BigDecimal sum){
 		return new DPFinder(duePayments, sum);
 	}
 
+	public static DPFinder dpFinder(final BigDecimal[] duePayments,
+			final BigDecimal sum, final FinderConfig config) {
+		return new DPFinder(Amounts.of(duePayments), Cents.of(sum), config);
+	}
+
+	public static RollingDPFinder rollingDPFinder(final BigDecimal[] duePayments, final BigDecimal sum){
+		return new RollingDPFinder(duePayments, sum);
+	}
+
+	public static MeetInMiddleFinder meetInMiddleFinder(final BigDecimal[] duePayments, final BigDecimal sum){
+		return new MeetInMiddleFinder(duePayments, sum);
+	}
+
 }
@@ -0,0 +1,143 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+
+/**
+ * Solves the Accounting Dilemma with the Horowitz-Sahni meet in the middle
+ * algorithm: the values are split in two halves, the sums of all the subsets
+ * of each half are enumerated in ascending order and the two sorted lists are
+ * scanned with two pointers looking for a pair adding up to the sum. Given a
+ * set of values V the solution complexity is O(2^(|V|/2)) in time and memory,
+ * whatever the sum.
+ * 
+ * @author vladimiro
+ * 
+ */
+class MeetInMiddleFinder extends AbstractFinder {
+
+	/**
+	 * The 2^29 subset sums of a half of 29 values already need 32GB (see
+	 * {@link #memory(int)}); with 31 values the merged list would not even
+	 * fit in an array, whose length is an int
+	 */
+	static final int MAX_VALUES = 2 * 29;
+
+	MeetInMiddleFinder(final BigDecimal[] values, final BigDecimal sum) {
+		this(Amounts.of(values), Cents.of(sum));
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if there are more than {@link #MAX_VALUES} amounts
+	 */
+	MeetInMiddleFinder(final Amounts amounts, final long sum) {
+		super(amounts, sum);
+		if (amounts.size() > MAX_VALUES) {
+			throw new IllegalArgumentException("Too many values");
+		}
+	}
+
+	@Override
+	protected int[] findIdx(final SearchMonitor monitor) {
+		final int half = amounts.size() / 2;
+		final SubsetSums low = subsetSums(0, half, monitor);
+		final SubsetSums high = subsetSums(half, amounts.size(), monitor);
+		final SearchMonitor.Counter steps = monitor.counter();
+		int i = 0;
+		int j = high.size - 1;
+		while (i < low.size && j >= 0) {
+			steps.visit();
+			final long s = low.sums[i] + high.sums[j];
+			if (s < sum) {
+				i++;
+			} else if (s > sum) {
+				j--;
+			} else {
+				return indexes(low.masks[i], 0, high.masks[j], half);
+			}
+		}
+		return new int[0];
+	}
+
+	/**
+	 * Sums of all the subsets of the amounts in [from, to), sorted ascending.
+	 * Each value doubles the list by merging it with a copy shifted by the
+	 * value, so no sort is needed. Sums above the target are dropped. Every
+	 * merged sum is reported to the monitor as a node.
+	 * 
+	 * @throws CancelledException
+	 */
+	private SubsetSums subsetSums(final int from, final int to,
+			final SearchMonitor monitor) {
+		long[] sums = new long[] { 0 };
+		long[] masks = new long[] { 0 };
+		int size = 1;
+		for (int k = from; k < to; k++) {
+			final long value = amounts.cents(k);
+			if (value > sum) {
+				continue;
+			}
+			final long bit = 1L << (k - from);
+			final long[] newSums = new long[size * 2];
+			final long[] newMasks = new long[size * 2];
+			final long limit = sum - value;
+			int a = 0;
+			int b = 0;
+			int n = 0;
+			while (a < size) {
+				if (b < size && sums[b] <= limit && sums[b] + value < sums[a]) {
+					newSums[n] = sums[b] + value;
+					newMasks[n++] = masks[b++] | bit;
+				} else {
+					newSums[n] = sums[a];
+					newMasks[n++] = masks[a++];
+				}
+			}
+			while (b < size && sums[b] <= limit) {
+				newSums[n] = sums[b] + value;
+				newMasks[n++] = masks[b++] | bit;
+			}
+			sums = newSums;
+			masks = newMasks;
+			size = n;
+			monitor.nodesVisited(n);
+		}
+		return new SubsetSums(sums, masks, size);
+	}
+
+	private static int[] indexes(final long lowMask, final int lowFrom,
+			final long highMask, final int highFrom) {
+		final int[] result = new int[Long.bitCount(lowMask)
+				+ Long.bitCount(highMask)];
+		int n = 0;
+		for (long m = lowMask; m != 0; m &= m - 1) {
+			result[n++] = lowFrom + Long.numberOfTrailingZeros(m);
+		}
+		for (long m = highMask; m != 0; m &= m - 1) {
+			result[n++] = highFrom + Long.numberOfTrailingZeros(m);
+		}
+		return result;
+	}
+
+	/**
+	 * Estimated number of bytes needed to solve a problem with the given
+	 * number of values.
+	 */
+	static double memory(final int numOfValues) {
+		// two lists of sums and masks, plus the buffers being merged
+		return 4 * 2 * 8 * Math.pow(2, (numOfValues + 1) / 2);
+	}
+
+	private static final class SubsetSums {
+		final long[] sums;
+		final long[] masks;
+		final int size;
+
+		SubsetSums(final long[] sums, final long[] masks, final int size) {
+			this.sums = sums;
+			this.masks = masks;
+			this.size = size;
+		}
+	}
+
+}
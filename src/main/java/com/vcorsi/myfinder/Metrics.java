@@ -0,0 +1,294 @@
+package com.vcorsi.myfinder;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters of the work done by the finders, to tell why a search was slow:
+ * the strategy chosen by {@link FinderFactory} and the estimates it was
+ * chosen on, the cells of the dynamic programming matrices and their peak
+ * size, the nodes of the search trees visited and pruned, and the time spent
+ * parsing, solving and writing.
+ * 
+ * Metrics are off by default. Finders report their work in blocks through
+ * their {@link SearchMonitor}, which only reads the enabled flag once per row
+ * or per {@link SearchMonitor#CHECK_INTERVAL} nodes, so the inner loops do
+ * not change when metrics are off. Counters are striped (see
+ * {@link StripedCounter}), since parallel finders report from many threads.
+ * 
+ * Metrics are exported through JMX, see {@link #register()}, and can be
+ * written to a JSON file, see {@link #writeStats(Path)}.
+ * 
+ * @author vladimiro
+ * 
+ */
+public final class Metrics implements MetricsMBean {
+
+	static final String OBJECT_NAME = "com.vcorsi.myfinder:type=Metrics";
+
+	private static final Metrics INSTANCE = new Metrics();
+
+	private static volatile boolean enabled;
+
+	private final StripedCounter solves = new StripedCounter();
+	private final StripedCounter parseNanos = new StripedCounter();
+	private final StripedCounter solveNanos = new StripedCounter();
+	private final StripedCounter writeNanos = new StripedCounter();
+	private final StripedCounter rowsBuilt = new StripedCounter();
+	private final StripedCounter dpCells = new StripedCounter();
+	private final AtomicLong peakMatrixBytes = new AtomicLong();
+	private final StripedCounter nodesVisited = new StripedCounter();
+	private final StripedCounter nodesPruned = new StripedCounter();
+	private final AtomicLongArray strategyCounts = new AtomicLongArray(
+			StrategySelector.Strategy.values().length);
+	private volatile String lastStrategy = "";
+	private volatile String lastStrategyReason = "";
+
+	private Metrics() {
+	}
+
+	/**
+	 * @return the metrics of the finders of this JVM
+	 */
+	public static Metrics get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param enabled
+	 *            true to start counting, false to stop
+	 */
+	public static void setEnabled(final boolean enabled) {
+		Metrics.enabled = enabled;
+	}
+
+	/**
+	 * @return true if the finders update the metrics
+	 */
+	static boolean enabled() {
+		return enabled;
+	}
+
+	/**
+	 * Registers the metrics in the platform MBean server, as
+	 * {@value #OBJECT_NAME}, unless they already are.
+	 * 
+	 * @throws IllegalStateException
+	 */
+	public void register() {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.registerMBean(this, new ObjectName(OBJECT_NAME));
+		} catch (InstanceAlreadyExistsException e) {
+			// registered before
+		} catch (JMException e) {
+			throw new IllegalStateException("Cannot register the metrics", e);
+		}
+	}
+
+	/**
+	 * @param nanos
+	 *            time spent reading an input
+	 */
+	public void recordParse(final long nanos) {
+		if (enabled) {
+			parseNanos.add(nanos);
+		}
+	}
+
+	/**
+	 * @param nanos
+	 *            time spent solving an input
+	 */
+	public void recordSolve(final long nanos) {
+		if (enabled) {
+			solves.add(1);
+			solveNanos.add(nanos);
+		}
+	}
+
+	/**
+	 * @param nanos
+	 *            time spent writing an output
+	 */
+	public void recordWrite(final long nanos) {
+		if (enabled) {
+			writeNanos.add(nanos);
+		}
+	}
+
+	void rowDone(final long cells, final long matrixBytes) {
+		rowsBuilt.add(1);
+		dpCells.add(cells);
+		long peak = peakMatrixBytes.get();
+		while (matrixBytes > peak
+				&& !peakMatrixBytes.compareAndSet(peak, matrixBytes)) {
+			peak = peakMatrixBytes.get();
+		}
+	}
+
+	void nodes(final long visited, final long pruned) {
+		nodesVisited.add(visited);
+		if (pruned > 0) {
+			nodesPruned.add(pruned);
+		}
+	}
+
+	void strategyChosen(final StrategySelector.Strategy strategy,
+			final String reason) {
+		strategyCounts.incrementAndGet(strategy.ordinal());
+		lastStrategy = strategy.name();
+		lastStrategyReason = reason;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public long getSolves() {
+		return solves.sum();
+	}
+
+	@Override
+	public long getParseNanos() {
+		return parseNanos.sum();
+	}
+
+	@Override
+	public long getSolveNanos() {
+		return solveNanos.sum();
+	}
+
+	@Override
+	public long getWriteNanos() {
+		return writeNanos.sum();
+	}
+
+	/**
+	 * @return rows of dynamic programming matrices built, or values added to
+	 *         a sparse set of sums
+	 */
+	@Override
+	public long getRowsBuilt() {
+		return rowsBuilt.sum();
+	}
+
+	/**
+	 * @return cells of dynamic programming matrices filled: bits of the
+	 *         rows, or sums of a sparse set
+	 */
+	@Override
+	public long getDpCells() {
+		return dpCells.sum();
+	}
+
+	@Override
+	public long getPeakMatrixBytes() {
+		return peakMatrixBytes.get();
+	}
+
+	/**
+	 * @return nodes of search trees visited (for {@link MeetInMiddleFinder},
+	 *         subset sums handled)
+	 */
+	@Override
+	public long getNodesVisited() {
+		return nodesVisited.sum();
+	}
+
+	/**
+	 * @return nodes of the {@link SubsetFinder} search tree whose subtree was
+	 *         cut because the remaining values cannot reach the sum, or
+	 *         because it was already searched without success
+	 */
+	@Override
+	public long getNodesPruned() {
+		return nodesPruned.sum();
+	}
+
+	/**
+	 * @return the number of times each strategy was chosen, e.g. "DP=3 SUBSET=1"
+	 */
+	@Override
+	public String getStrategyCounts() {
+		final StringBuilder sb = new StringBuilder();
+		for (StrategySelector.Strategy strategy : StrategySelector.Strategy
+				.values()) {
+			final long count = strategyCounts.get(strategy.ordinal());
+			if (count > 0) {
+				sb.append(sb.length() > 0 ? " " : "").append(strategy.name())
+						.append('=').append(count);
+			}
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String getLastStrategy() {
+		return lastStrategy;
+	}
+
+	/**
+	 * @return the estimated time and memory of each strategy when the last one
+	 *         was chosen
+	 */
+	@Override
+	public String getLastStrategyReason() {
+		return lastStrategyReason;
+	}
+
+	@Override
+	public void reset() {
+		for (StripedCounter counter : new StripedCounter[] { solves,
+				parseNanos, solveNanos, writeNanos, rowsBuilt, dpCells,
+				nodesVisited, nodesPruned }) {
+			counter.reset();
+		}
+		peakMatrixBytes.set(0);
+		for (int i = 0; i < strategyCounts.length(); i++) {
+			strategyCounts.set(i, 0);
+		}
+		lastStrategy = "";
+		lastStrategyReason = "";
+	}
+
+	/**
+	 * Writes the metrics to file as a JSON object, one field per line.
+	 * 
+	 * @throws IOException
+	 */
+	public void writeStats(final Path file) throws IOException {
+		try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(file,
+				StandardCharsets.UTF_8))) {
+			pw.println("{");
+			pw.println("  \"solves\": " + getSolves() + ",");
+			pw.println("  \"parseNanos\": " + getParseNanos() + ",");
+			pw.println("  \"solveNanos\": " + getSolveNanos() + ",");
+			pw.println("  \"writeNanos\": " + getWriteNanos() + ",");
+			pw.println("  \"rowsBuilt\": " + getRowsBuilt() + ",");
+			pw.println("  \"dpCells\": " + getDpCells() + ",");
+			pw.println("  \"peakMatrixBytes\": " + getPeakMatrixBytes() + ",");
+			pw.println("  \"nodesVisited\": " + getNodesVisited() + ",");
+			pw.println("  \"nodesPruned\": " + getNodesPruned() + ",");
+			pw.println("  \"strategyCounts\": \"" + getStrategyCounts() + "\",");
+			pw.println("  \"lastStrategy\": \"" + getLastStrategy() + "\",");
+			pw.println("  \"lastStrategyReason\": \"" + getLastStrategyReason()
+					+ "\"");
+			pw.println("}");
+		}
+	}
+
+}
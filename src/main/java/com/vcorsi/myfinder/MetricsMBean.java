@@ -0,0 +1,39 @@
+package com.vcorsi.myfinder;
+
+/**
+ * JMX view of the {@link Metrics}.
+ * 
+ * @author vladimiro
+ * 
+ */
+public interface MetricsMBean {
+
+	boolean isEnabled();
+
+	long getSolves();
+
+	long getParseNanos();
+
+	long getSolveNanos();
+
+	long getWriteNanos();
+
+	long getRowsBuilt();
+
+	long getDpCells();
+
+	long getPeakMatrixBytes();
+
+	long getNodesVisited();
+
+	long getNodesPruned();
+
+	String getStrategyCounts();
+
+	String getLastStrategy();
+
+	String getLastStrategyReason();
+
+	void reset();
+
+}
@@ -0,0 +1,264 @@
+package com.vcorsi.myfinder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reachability matrix of the subset sum problem, like {@link BitsetTable},
+ * whose rows are kept outside the Java heap in a memory mapped file: the
+ * operating system keeps the rows being used in memory and writes the others
+ * to disk when memory runs short, so the matrix can be several times larger
+ * than the heap and does not slow down garbage collection.
+ *
+ * Only the row being built lives in the heap. It is updated in place with a
+ * shift-OR by the value of each row, then copied at the end of the file. The
+ * length of every row is known in advance from the sums of the values, so
+ * the file is sized and mapped once, in segments of at most
+ * {@link #SEGMENT_WORDS} words. Reconstructing a subset only reads a word per
+ * row.
+ *
+ * The file is created in the given directory and deleted when the table is
+ * closed; its disk space is released once the mapped segments are garbage
+ * collected.
+ *
+ * @author vladimiro
+ *
+ */
+final class OffHeapTable implements Closeable {
+
+	/**
+	 * Words of a mapped segment: 1GB
+	 */
+	static final int SEGMENT_WORDS = 1 << 27;
+
+	private final long[] values;
+	private final long capacity;
+	private final SearchMonitor monitor;
+	private final FileChannel channel;
+	private final LongBuffer[] segments;
+	/**
+	 * offsets[i] is the position in words of row i in the file,
+	 * offsets[values.length + 1] the length of the file
+	 */
+	private final long[] offsets;
+	/**
+	 * the last row built, in the heap
+	 */
+	private final long[] row;
+	private int builtRows;
+	private long prefixSum;
+
+	/**
+	 * @param values
+	 *            non negative values, one per row, in the order rows are
+	 *            built.
+	 * @param capacity
+	 *            the largest sum the table has to represent.
+	 * @param directory
+	 *            where the file of the rows is created
+	 * @param monitor
+	 *            told about every built row
+	 * @throws IllegalArgumentException
+	 * @throws IllegalStateException
+	 *             if the file cannot be created or mapped
+	 */
+	OffHeapTable(final long[] values, final long capacity,
+			final Path directory, final SearchMonitor monitor) {
+		if (capacity < 0 || capacity > BitsetTable.MAX_CAPACITY) {
+			throw new IllegalArgumentException("Sum too large");
+		}
+		this.values = values;
+		this.capacity = capacity;
+		this.monitor = monitor;
+		this.offsets = new long[values.length + 2];
+		long prefix = 0;
+		offsets[1] = 1;
+		for (int i = 0; i < values.length; i++) {
+			prefix = values[i] > capacity - prefix ? capacity : prefix
+					+ values[i];
+			offsets[i + 2] = offsets[i + 1] + BitsetTable.words(prefix);
+		}
+		final long length = offsets[values.length + 1];
+		this.segments = new LongBuffer[(int) ((length + SEGMENT_WORDS - 1) / SEGMENT_WORDS)];
+		FileChannel c = null;
+		try {
+			Files.createDirectories(directory);
+			final Path file = Files.createTempFile(directory, "dp", ".rows");
+			c = FileChannel.open(file, StandardOpenOption.READ,
+					StandardOpenOption.WRITE,
+					StandardOpenOption.DELETE_ON_CLOSE);
+			for (int k = 0; k < segments.length; k++) {
+				final long from = (long) k * SEGMENT_WORDS;
+				segments[k] = c.map(FileChannel.MapMode.READ_WRITE, 8 * from,
+						8 * Math.min(SEGMENT_WORDS, length - from))
+						.order(ByteOrder.nativeOrder()).asLongBuffer();
+			}
+		} catch (IOException e) {
+			close(c);
+			throw new IllegalStateException("Cannot map the off-heap table", e);
+		}
+		this.channel = c;
+		this.row = new long[BitsetTable.words(capacity)];
+		row[0] = 1L;
+		store(0);
+		this.builtRows = 1;
+	}
+
+	/**
+	 * Builds rows until the target sum becomes reachable.
+	 *
+	 * @param target
+	 *            a sum not greater than capacity
+	 * @return the index of the first row containing target, or -1 if no row
+	 *         contains it.
+	 * @throws CancelledException
+	 */
+	int build(final long target) {
+		assert (target >= 0 && target <= capacity);
+		final int found = firstRow(target);
+		if (found >= 0) {
+			return found;
+		}
+		while (builtRows <= values.length) {
+			nextRow();
+			if (BitsetTable.get(row, target)) {
+				return builtRows - 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Binary search of the first built row containing sum: a row contains all
+	 * the sums of the previous one.
+	 *
+	 * @return the index of the row or -1 if no built row contains sum
+	 */
+	int firstRow(final long sum) {
+		if (sum < 0 || sum > capacity || !get(builtRows - 1, sum)) {
+			return -1;
+		}
+		int low = 0;
+		int high = builtRows - 1;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (get(mid, sum)) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the number of rows built so far, row 0 included
+	 */
+	int builtRows() {
+		return builtRows;
+	}
+
+	/**
+	 * Rebuilds the subset summing to target by walking the rows backwards, as
+	 * {@link BitsetTable#reconstruct(int, long)} does.
+	 *
+	 * @param row
+	 *            a built row containing target
+	 * @param target
+	 *            the sum to decompose
+	 * @return indexes (in row order) of the values summing to target
+	 */
+	int[] reconstruct(final int row, final long target) {
+		assert (get(row, target));
+		int[] result = new int[16];
+		int size = 0;
+		long t = target;
+		for (int i = row; i > 0 && t > 0; i--) {
+			if (get(i - 1, t)) {
+				// reachable without the value of this row
+				continue;
+			}
+			if (size == result.length) {
+				result = Arrays.copyOf(result, size * 2);
+			}
+			result[size++] = i - 1;
+			t -= values[i - 1];
+		}
+		assert (t == 0);
+		return Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * Deletes the file of the rows.
+	 */
+	@Override
+	public void close() {
+		close(channel);
+	}
+
+	private static void close(final FileChannel channel) {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// the file is deleted at exit anyway
+			}
+		}
+	}
+
+	private void nextRow() {
+		final long value = values[builtRows - 1];
+		prefixSum = value > capacity - prefixSum ? capacity : prefixSum
+				+ value;
+		// the words of the previous row are kept, the new ones are still 0
+		final int length = BitsetTable.words(prefixSum);
+		if (value <= capacity) {
+			BitsetTable.shiftOr(row, value, length);
+			final int used = (int) (prefixSum & 63) + 1;
+			if (used < 64) {
+				row[length - 1] &= (1L << used) - 1;
+			}
+		}
+		store(builtRows);
+		builtRows++;
+		monitor.rowDone(64L * length, 8 * offsets[builtRows]);
+	}
+
+	/**
+	 * Copies the row in the heap at the position of row idx in the file.
+	 */
+	private void store(final int idx) {
+		final int length = (int) (offsets[idx + 1] - offsets[idx]);
+		int w = 0;
+		while (w < length) {
+			final long position = offsets[idx] + w;
+			final LongBuffer segment = segments[(int) (position / SEGMENT_WORDS)];
+			final int from = (int) (position % SEGMENT_WORDS);
+			final int n = Math.min(length - w, segment.capacity() - from);
+			segment.position(from);
+			segment.put(row, w, n);
+			w += n;
+		}
+	}
+
+	/**
+	 * @return true if sum is reachable in row idx
+	 */
+	private boolean get(final int idx, final long sum) {
+		final long word = sum >>> 6;
+		if (word >= offsets[idx + 1] - offsets[idx]) {
+			return false;
+		}
+		final long position = offsets[idx] + word;
+		return (segments[(int) (position / SEGMENT_WORDS)]
+				.get((int) (position % SEGMENT_WORDS)) & (1L << sum)) != 0;
+	}
+
+}
@@ -0,0 +1,41 @@
+package com.vcorsi.myfinder;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress counters of a running {@link CancellableFinder}, which can be read
+ * from another thread while the finder runs. Finders update them every few
+ * thousand steps, so they lag slightly behind the actual work.
+ * 
+ * @author vladimiro
+ * 
+ */
+public class Progress {
+
+	private final AtomicLong rowsDone = new AtomicLong();
+	private final AtomicLong nodesExplored = new AtomicLong();
+
+	/**
+	 * @return the number of rows of a dynamic programming matrix built so far
+	 */
+	public long getRowsDone() {
+		return rowsDone.get();
+	}
+
+	/**
+	 * @return the number of nodes of a search tree visited so far (for
+	 *         {@link MeetInMiddleFinder}, the number of subset sums handled)
+	 */
+	public long getNodesExplored() {
+		return nodesExplored.get();
+	}
+
+	void addRows(final long rows) {
+		rowsDone.addAndGet(rows);
+	}
+
+	void addNodes(final long nodes) {
+		nodesExplored.addAndGet(nodes);
+	}
+
+}
@@ -0,0 +1,247 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Long-lived reconciliation engine: due payments are added and removed as
+ * they post and settle, and bank transfers are queried against the current
+ * payments as they arrive.
+ *
+ * For every sum up to the largest transfer the engine keeps the number of
+ * subsets of the payments reaching it, modulo the prime 2^61 - 1. Adding a
+ * payment of amount v updates the counts from the largest sum down,
+ * <code>c[s] += c[s - v]</code>, and removing it undoes the update from the
+ * smallest sum up, <code>c[s] -= c[s - v]</code>: O(S) per change. A
+ * transfer without solution is then rejected in O(1) as long as fewer than
+ * 61 payments are not larger than the largest transfer: a sum then has fewer
+ * than 2^61 - 1 subsets, so its count is 0 only if it is unreachable.
+ * Otherwise a zero count is checked against the table.
+ *
+ * Solutions are rebuilt from a {@link BitsetTable} over the payments in the
+ * order they were added. It is kept between queries: adding a payment only
+ * appends a row, built by the next query, and removing one only builds again
+ * the rows following it. The table is only built if it fits in the heap
+ * budget, otherwise the query is solved by the finder of
+ * {@link FinderFactory#finder(long[], long, FinderConfig)}.
+ *
+ * All the methods are synchronized.
+ *
+ * @author vladimiro
+ *
+ */
+public class ReconciliationEngine {
+
+	static final long PRIME = (1L << 61) - 1;
+
+	private final long maxTransfer;
+	private final FinderConfig config;
+	/**
+	 * number of subsets of the positive payments reaching each sum, modulo
+	 * PRIME
+	 */
+	private final long[] counts;
+	/**
+	 * the positive payments, in the order they were added
+	 */
+	private long[] payments = new long[16];
+	private int numOfPayments;
+	private int numOfZeros;
+	/**
+	 * number of positive payments not larger than the largest transfer
+	 */
+	private int numOfCounted;
+	/**
+	 * the first rows of the table over the current payments, row 0 included
+	 */
+	private long[][] validRows = new long[][] { { 1L } };
+	/**
+	 * table over the current payments, null if none was needed since the
+	 * last change
+	 */
+	private BitsetTable table;
+
+	/**
+	 * @param maxTransfer
+	 *            the largest bank transfer that will be queried, in cents
+	 * @param config
+	 *            tuning parameters
+	 * @throws IllegalArgumentException
+	 */
+	public ReconciliationEngine(final long maxTransfer,
+			final FinderConfig config) {
+		if (maxTransfer < 0) {
+			throw new IllegalArgumentException("Sum cannot be negative");
+		}
+		if (maxTransfer >= Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Sum too large");
+		}
+		this.maxTransfer = maxTransfer;
+		this.config = config;
+		this.counts = new long[(int) maxTransfer + 1];
+		this.counts[0] = 1;
+	}
+
+	/**
+	 * @param payment
+	 *            a due payment in cents, non negative
+	 * @throws IllegalArgumentException
+	 */
+	public synchronized void addPayment(final long payment) {
+		if (payment < 0) {
+			throw new IllegalArgumentException("Invalid values");
+		}
+		if (payment == 0) {
+			numOfZeros++;
+			return;
+		}
+		if (numOfPayments == payments.length) {
+			payments = Arrays.copyOf(payments, numOfPayments * 2);
+		}
+		payments[numOfPayments] = payment;
+		numOfPayments++;
+		// the rows built so far do not depend on the new payment
+		invalidate(numOfPayments - 1);
+		if (payment <= maxTransfer) {
+			numOfCounted++;
+			final int v = (int) payment;
+			for (int s = counts.length - 1; s >= v; s--) {
+				// branch free reduction modulo PRIME
+				final long c = counts[s] + counts[s - v] - PRIME;
+				counts[s] = c + ((c >> 63) & PRIME);
+			}
+		}
+	}
+
+	/**
+	 * @param payment
+	 *            the amount of a due payment added before, in cents
+	 * @return false if there is no payment of that amount
+	 */
+	public synchronized boolean removePayment(final long payment) {
+		if (payment == 0) {
+			if (numOfZeros == 0) {
+				return false;
+			}
+			numOfZeros--;
+			return true;
+		}
+		// the last one, so that fewer rows are built again
+		int pos = numOfPayments - 1;
+		while (pos >= 0 && payments[pos] != payment) {
+			pos--;
+		}
+		if (pos < 0) {
+			return false;
+		}
+		System.arraycopy(payments, pos + 1, payments, pos, numOfPayments - pos
+				- 1);
+		numOfPayments--;
+		invalidate(pos);
+		if (payment <= maxTransfer) {
+			numOfCounted--;
+			final int v = (int) payment;
+			for (int s = v; s < counts.length; s++) {
+				final long c = counts[s] - counts[s - v];
+				counts[s] = c + ((c >> 63) & PRIME);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param transfer
+	 *            a bank transfer in cents, non negative and not greater than
+	 *            the largest transfer the engine was built for
+	 * @return a solution: array of current due payments whose sum is the
+	 *         transfer, empty if there is none.
+	 * @throws IllegalArgumentException
+	 */
+	public synchronized BigDecimal[] query(final long transfer) {
+		if (transfer < 0) {
+			throw new IllegalArgumentException("Sum cannot be negative");
+		}
+		if (transfer > maxTransfer) {
+			throw new IllegalArgumentException(
+					"Sum larger than the engine maximum");
+		}
+		if (transfer == 0) {
+			return numOfZeros == 0 ? new BigDecimal[0]
+					: new BigDecimal[] { Cents.toBigDecimal(0) };
+		}
+		if (counts[(int) transfer] == 0 && numOfCounted < 61) {
+			return new BigDecimal[0];
+		}
+		final BitsetTable t = table();
+		if (t == null) {
+			return FinderFactory.finder(
+					Arrays.copyOf(payments, numOfPayments), transfer, config)
+					.find();
+		}
+		final int row = t.build(transfer, config.getParallelism());
+		if (row < 0) {
+			return new BigDecimal[0];
+		}
+		final int[] idxes = t.reconstruct(row, transfer);
+		final BigDecimal[] result = new BigDecimal[idxes.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = Cents.toBigDecimal(payments[idxes[i]]);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of due payments
+	 */
+	public synchronized int size() {
+		return numOfPayments + numOfZeros;
+	}
+
+	/**
+	 * Rows following the payment at pos depend on it: the others are kept
+	 * for the next table.
+	 */
+	private void invalidate(final int pos) {
+		if (table != null) {
+			validRows = new long[Math.min(table.builtRows(), pos + 1)][];
+			for (int i = 0; i < validRows.length; i++) {
+				validRows[i] = table.row(i);
+			}
+			table = null;
+		} else if (validRows.length > pos + 1) {
+			validRows = Arrays.copyOf(validRows, pos + 1);
+		}
+	}
+
+	/**
+	 * @return the table over the current payments, starting from the valid
+	 *         rows of the previous one, or null if its rows do not fit in the
+	 *         heap budget
+	 */
+	private BitsetTable table() {
+		if (table == null) {
+			long held = 0;
+			for (long[] row : validRows) {
+				held += BitsetTable.rowBytes(row);
+			}
+			// the rows still to build, each up to the sum of its payments
+			long more = 0;
+			long prefixSum = 0;
+			for (int i = 0; i < numOfPayments; i++) {
+				prefixSum = payments[i] > maxTransfer - prefixSum ? maxTransfer
+						: prefixSum + payments[i];
+				if (i + 1 >= validRows.length) {
+					more += 16 + 8L * BitsetTable.words(prefixSum);
+				}
+			}
+			if (!new StrategySelector(config).fits(held, more)) {
+				validRows = new long[][] { { 1L } };
+				return null;
+			}
+			table = new BitsetTable(Arrays.copyOf(payments, numOfPayments),
+					maxTransfer, validRows, SearchMonitor.unbounded());
+		}
+		return table;
+	}
+
+}
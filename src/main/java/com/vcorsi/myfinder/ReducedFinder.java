@@ -0,0 +1,63 @@
+package com.vcorsi.myfinder;
+
+/**
+ * Solves the smaller problem built by a {@link Reduction} with another
+ * finder, then expands its solution back into the original payments.
+ * 
+ * @author vladimiro
+ * 
+ */
+class ReducedFinder extends AbstractFinder {
+
+	private final Reduction reduction;
+	/**
+	 * solves the reduced problem, null if it has no item
+	 */
+	private final AbstractFinder finder;
+
+	/**
+	 * @param amounts
+	 *            the original payments
+	 * @param sum
+	 *            the original transfer
+	 * @param reduction
+	 *            the reduction of amounts and sum
+	 * @param finder
+	 *            a finder of the reduction items and sum, null if the
+	 *            reduction has no item
+	 */
+	ReducedFinder(final Amounts amounts, final long sum,
+			final Reduction reduction, final AbstractFinder finder) {
+		super(amounts, sum);
+		this.reduction = reduction;
+		this.finder = finder;
+	}
+
+	/**
+	 * @return the finder of the reduced problem, null if it has no item
+	 */
+	AbstractFinder finder() {
+		return finder;
+	}
+
+	@Override
+	protected int[] findIdx(final SearchMonitor monitor) {
+		if (reduction.isInfeasible()) {
+			return new int[0];
+		}
+		if (reduction.sum() == 0) {
+			// the forced payments are the solution
+			return reduction.expand(new int[0]);
+		}
+		if (finder == null) {
+			return new int[0];
+		}
+		int[] itemIdxes = trivialSolution(reduction.items(), reduction.sum());
+		if (itemIdxes == null) {
+			itemIdxes = finder.findIdx(monitor);
+		}
+		return itemIdxes.length == 0 ? itemIdxes : reduction
+				.expand(itemIdxes);
+	}
+
+}
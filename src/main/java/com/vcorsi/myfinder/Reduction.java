@@ -0,0 +1,193 @@
+package com.vcorsi.myfinder;
+
+import java.util.Arrays;
+
+/**
+ * Smaller problem equivalent to a set of due payments and a bank transfer,
+ * solved in place of the original one by {@link ReducedFinder}:
+ * <ul>
+ * <li>payments larger than the transfer, or equal to 0, are dropped;</li>
+ * <li>payments which must be part of every solution are chosen at once: if
+ * the other payments add up to less than the transfer, enough copies of an
+ * amount to make up the difference are forced in. This is repeated until
+ * nothing changes, dropping the amounts larger than what is left of the
+ * transfer;</li>
+ * <li>c payments of the same amount a become the items a, 2a, 4a, ... (binary
+ * splitting), whose subsets give any number of copies from 0 to c with
+ * O(log c) items instead of c.</li>
+ * </ul>
+ * A solution of the reduced problem is expanded back into the individual
+ * payments by {@link #expand(int[])}.
+ * 
+ * @author vladimiro
+ * 
+ */
+final class Reduction {
+
+	/**
+	 * the items, null if there is none
+	 */
+	private final Amounts items;
+	/**
+	 * what is left of the transfer once the forced payments are chosen, -1 if
+	 * the transfer cannot be reached
+	 */
+	private final long sum;
+	/**
+	 * indexes of the forced payments
+	 */
+	private final int[] forced;
+	/**
+	 * indexes of the payments each item stands for
+	 */
+	private final int[][] itemPayments;
+
+	/**
+	 * @param amounts
+	 *            the due payments
+	 * @param sum
+	 *            the bank transfer in cents, non negative
+	 */
+	Reduction(final Amounts amounts, final long sum) {
+		// groups of equal amounts, as runs of the ascending order
+		final int[] order = amounts.ascendingOrder();
+		final int[] groupStarts = new int[order.length + 1];
+		int numOfGroups = 0;
+		long total = 0;
+		for (int i = 0; i < order.length; i++) {
+			final long c = amounts.cents(order[i]);
+			if (c == 0 || c > sum) {
+				continue;
+			}
+			if (numOfGroups == 0
+					|| c != amounts.cents(order[groupStarts[numOfGroups - 1]])) {
+				groupStarts[numOfGroups++] = i;
+			}
+			total += c;
+			groupStarts[numOfGroups] = i + 1;
+		}
+		final long[] groupValues = new long[numOfGroups];
+		final int[] counts = new int[numOfGroups];
+		final int[] forcedCounts = new int[numOfGroups];
+		for (int g = 0; g < numOfGroups; g++) {
+			groupValues[g] = amounts.cents(order[groupStarts[g]]);
+			counts[g] = groupStarts[g + 1] - groupStarts[g];
+		}
+		// forced payments
+		long remaining = sum;
+		boolean changed = true;
+		while (changed && total >= remaining) {
+			changed = false;
+			for (int g = 0; g < numOfGroups; g++) {
+				final long value = groupValues[g];
+				if (counts[g] == 0) {
+					continue;
+				}
+				if (value > remaining) {
+					total -= value * counts[g];
+					counts[g] = 0;
+					changed = true;
+					continue;
+				}
+				final long others = total - value * counts[g];
+				if (others < remaining) {
+					final int k = (int) ((remaining - others + value - 1) / value);
+					forcedCounts[g] += k;
+					counts[g] -= k;
+					remaining -= value * k;
+					total -= value * k;
+					changed = true;
+				}
+			}
+		}
+		if (total < remaining) {
+			this.items = null;
+			this.sum = -1;
+			this.forced = new int[0];
+			this.itemPayments = new int[0][];
+			return;
+		}
+		this.sum = remaining;
+		// forced payments are the first ones of their group, then items
+		int numOfForced = 0;
+		int numOfItems = 0;
+		for (int g = 0; g < numOfGroups; g++) {
+			numOfForced += forcedCounts[g];
+			numOfItems += 32 - Integer.numberOfLeadingZeros(counts[g]);
+		}
+		this.forced = new int[numOfForced];
+		final long[] itemCents = new long[numOfItems];
+		this.itemPayments = new int[numOfItems][];
+		int f = 0;
+		int item = 0;
+		for (int g = 0; g < numOfGroups; g++) {
+			int next = groupStarts[g];
+			for (int k = 0; k < forcedCounts[g]; k++) {
+				forced[f++] = order[next++];
+			}
+			int left = counts[g];
+			for (int copies = 1; left > 0; copies *= 2) {
+				final int piece = Math.min(copies, left);
+				itemCents[item] = groupValues[g] * piece;
+				itemPayments[item++] = Arrays.copyOfRange(order, next, next
+						+ piece);
+				next += piece;
+				left -= piece;
+			}
+		}
+		assert (item == numOfItems);
+		this.items = numOfItems == 0 ? null : Amounts.of(itemCents);
+	}
+
+	/**
+	 * @return true if the transfer cannot be reached by any subset
+	 */
+	boolean isInfeasible() {
+		return sum < 0;
+	}
+
+	/**
+	 * @return the items of the reduced problem, null if there is none
+	 */
+	Amounts items() {
+		return items;
+	}
+
+	/**
+	 * @return the transfer of the reduced problem
+	 */
+	long sum() {
+		return sum;
+	}
+
+	/**
+	 * @param size
+	 *            number of the original payments
+	 * @return true if the reduced problem is smaller than the original one
+	 */
+	boolean reduces(final int size) {
+		return forced.length > 0 || itemPayments.length < size;
+	}
+
+	/**
+	 * @param itemIdxes
+	 *            indexes of the items of a solution of the reduced problem
+	 * @return indexes of the payments of the corresponding solution of the
+	 *         original problem
+	 */
+	int[] expand(final int[] itemIdxes) {
+		int size = forced.length;
+		for (int i : itemIdxes) {
+			size += itemPayments[i].length;
+		}
+		final int[] result = Arrays.copyOf(forced, size);
+		int n = forced.length;
+		for (int i : itemIdxes) {
+			System.arraycopy(itemPayments[i], 0, result, n,
+					itemPayments[i].length);
+			n += itemPayments[i].length;
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,163 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Uses dynamic programming like {@link DPFinder}, but only keeps a couple of
+ * rows of the matrix: O(|V| * S / 64 * log |V|) time and O(S / 8) bytes of
+ * memory, where {@link DPFinder} needs |V| * S / 8 bytes.
+ * 
+ * The subset is rebuilt by divide and conquer, as in Hirschberg's algorithm:
+ * the values are split in two halves, the last row of each half is computed
+ * with a single rolling row, and the target is split into a sum reachable by
+ * the first half and a sum reachable by the second one. Then each half is
+ * solved for its own sum. Once the rows of a half fit in the memory of two
+ * rolling rows, the half is solved with a whole {@link BitsetTable}.
+ * 
+ * @author vladimiro
+ * 
+ */
+class RollingDPFinder extends AbstractFinder {
+
+	/**
+	 * indexes of the values sorted by ascending amount
+	 */
+	private final int[] order;
+	/**
+	 * the values sorted by ascending amount, divided by their greatest common
+	 * divisor
+	 */
+	private long[] sortedCents;
+	/**
+	 * words of a rolling row covering the whole sum
+	 */
+	private int rowWords;
+
+	RollingDPFinder(final BigDecimal[] values, final BigDecimal sum) {
+		this(Amounts.of(values), Cents.of(sum));
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the sum is too large for a bitset
+	 */
+	RollingDPFinder(final Amounts amounts, final long sum) {
+		super(amounts, sum);
+		if (sum > BitsetTable.MAX_CAPACITY) {
+			throw new IllegalArgumentException("Sum too large");
+		}
+		this.order = amounts.ascendingOrder();
+	}
+
+	@Override
+	protected int[] findIdx(final SearchMonitor monitor) {
+		final long divisor = amounts.gcd(sum);
+		if (sum % divisor != 0) {
+			return new int[0];
+		}
+		sortedCents = amounts.scaled(order, sum, divisor);
+		rowWords = BitsetTable.words(sum / divisor);
+		final int[] idxes = new int[sortedCents.length];
+		final int size = solve(0, sortedCents.length, sum / divisor, idxes, 0,
+				monitor);
+		if (size < 0) {
+			return new int[0];
+		}
+		// a subset exists!
+		for (int i = 0; i < size; i++) {
+			idxes[i] = order[idxes[i]];
+		}
+		return Arrays.copyOf(idxes, size);
+	}
+
+	/**
+	 * Stores in idxes the indexes of a subset of the values in [from, to)
+	 * summing to target.
+	 * 
+	 * @param target
+	 *            the sum to decompose
+	 * @param size
+	 *            number of indexes already stored in idxes
+	 * @return the number of indexes stored in idxes, or -1 if target is not
+	 *         reachable by the values in [from, to)
+	 */
+	private int solve(final int from, final int to, final long target,
+			final int[] idxes, final int size, final SearchMonitor monitor) {
+		if (target == 0) {
+			return size;
+		}
+		if (to - from == 1
+				|| (long) (to - from) * BitsetTable.words(target) <= 2L * rowWords) {
+			final BitsetTable table = new BitsetTable(Arrays.copyOfRange(
+					sortedCents, from, to), target, monitor);
+			final int row = table.build(target);
+			if (row < 0) {
+				return -1;
+			}
+			final int[] subset = table.reconstruct(row, target);
+			for (int i = 0; i < subset.length; i++) {
+				idxes[size + i] = from + subset[i];
+			}
+			return size + subset.length;
+		}
+		final int mid = (from + to) >>> 1;
+		final long firstSum = split(from, mid, to, target, monitor);
+		if (firstSum < 0) {
+			return -1;
+		}
+		// both halves can now be solved
+		final int firstSize = solve(from, mid, firstSum, idxes, size, monitor);
+		return solve(mid, to, target - firstSum, idxes, firstSize, monitor);
+	}
+
+	/**
+	 * The rows of the two halves only live in this method, so that they are
+	 * not kept alive while solving the halves.
+	 * 
+	 * @return a sum reachable by the values in [from, mid) such that target
+	 *         minus it is reachable by the values in [mid, to), or -1 if
+	 *         there is none
+	 */
+	private long split(final int from, final int mid, final int to,
+			final long target, final SearchMonitor monitor) {
+		final long[] first = lastRow(from, mid, target, monitor);
+		final long[] second = lastRow(mid, to, target, monitor);
+		for (int w = 0; w < first.length; w++) {
+			for (long bits = first[w]; bits != 0; bits &= bits - 1) {
+				final long s = ((long) w << 6) + Long.numberOfTrailingZeros(bits);
+				if (s > target) {
+					break;
+				}
+				if (BitsetTable.get(second, target - s)) {
+					return s;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the sums up to target reachable by the values in [from, to),
+	 *         computed with a single rolling row
+	 * @throws CancelledException
+	 */
+	private long[] lastRow(final int from, final int to, final long target,
+			final SearchMonitor monitor) {
+		final long[] row = new long[BitsetTable.words(target)];
+		row[0] = 1L;
+		long prefixSum = 0;
+		for (int i = from; i < to; i++) {
+			final long value = sortedCents[i];
+			if (value <= target) {
+				prefixSum = Math.min(target, prefixSum + value);
+				BitsetTable.shiftOr(row, value, BitsetTable.words(prefixSum));
+			}
+			monitor.rowDone(64L * BitsetTable.words(prefixSum),
+					BitsetTable.rowBytes(row));
+		}
+		BitsetTable.clearAbove(row, target);
+		return row;
+	}
+
+}
@@ -0,0 +1,168 @@
+package com.vcorsi.myfinder;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link SolutionEnumerator} visiting the {@link SubsetFinder} search tree
+ * to its end instead of stopping at the first solution. It only needs memory
+ * proportional to the number of payments, whatever the bank transfer, so it
+ * is used when the {@link DPFinder} matrix does not fit in memory.
+ * 
+ * Values are visited in descending order and a branch is cut as soon as the
+ * values still to visit add up to less than the remaining sum.
+ * 
+ * @author vladimiro
+ * 
+ */
+class SearchEnumerator extends AbstractEnumerator {
+
+	/**
+	 * values sorted descending
+	 */
+	private final long[] sortedValues;
+	/**
+	 * index of sortedValues in amounts
+	 */
+	private final int[] order;
+	/**
+	 * suffixSums[i] is the sum of sortedValues[i..]
+	 */
+	private final long[] suffixSums;
+	/**
+	 * index of the first zero value in sortedValues
+	 */
+	private final int firstZero;
+
+	SearchEnumerator(final Amounts amounts, final long sum) {
+		super(amounts, sum);
+		final int[] ascending = amounts.ascendingOrder();
+		final int n = ascending.length;
+		this.order = new int[n];
+		this.sortedValues = new long[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = ascending[n - 1 - i];
+			sortedValues[i] = amounts.cents(order[i]);
+		}
+		this.suffixSums = new long[n + 1];
+		for (int i = n - 1; i >= 0; i--) {
+			suffixSums[i] = suffixSums[i + 1] + sortedValues[i];
+		}
+		int zero = n;
+		while (zero > 0 && sortedValues[zero - 1] == 0) {
+			zero--;
+		}
+		this.firstZero = zero;
+	}
+
+	@Override
+	protected Iterator<int[]> subsets() {
+		return new SearchIterator();
+	}
+
+	/**
+	 * Depth first visit of the search tree, with an explicit stack of (next
+	 * value, remaining sum, visited branches). The branch including a value is
+	 * visited before the one excluding it.
+	 */
+	private final class SearchIterator implements Iterator<int[]> {
+
+		private int[] idxStack = new int[16];
+		private long[] sumStack = new long[16];
+		private byte[] stateStack = new byte[16];
+		/**
+		 * values chosen on the path to the top of the stack; pathSize[k] is
+		 * the size of the path when frame k was pushed
+		 */
+		private int[] path = new int[16];
+		private int[] pathSizes = new int[16];
+		private int top = -1;
+		private int[] next;
+
+		SearchIterator() {
+			push(0, sum, 0);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				next = advance();
+			}
+			return next != null;
+		}
+
+		@Override
+		public int[] next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final int[] result = next;
+			next = null;
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private int[] advance() {
+			while (top >= 0) {
+				int i = idxStack[top];
+				final long t = sumStack[top];
+				final int pathSize = pathSizes[top];
+				if (t == 0 && i < firstZero) {
+					// only values equal to 0 may still be chosen
+					i = firstZero;
+					idxStack[top] = i;
+				}
+				if (i == sortedValues.length) {
+					top--;
+					if (t == 0) {
+						final int[] result = new int[pathSize];
+						for (int k = 0; k < pathSize; k++) {
+							result[k] = order[path[k]];
+						}
+						return result;
+					}
+					continue;
+				}
+				final long value = sortedValues[i];
+				if (stateStack[top] == 0) {
+					stateStack[top] = 1;
+					if (value <= t && suffixSums[i + 1] >= t - value) {
+						if (pathSize == path.length) {
+							path = Arrays.copyOf(path, pathSize * 2);
+						}
+						path[pathSize] = i;
+						push(i + 1, t - value, pathSize + 1);
+					}
+				} else if (stateStack[top] == 1) {
+					stateStack[top] = 2;
+					if (suffixSums[i + 1] >= t) {
+						push(i + 1, t, pathSize);
+					}
+				} else {
+					top--;
+				}
+			}
+			return null;
+		}
+
+		private void push(final int idx, final long sum, final int pathSize) {
+			top++;
+			if (top == idxStack.length) {
+				idxStack = Arrays.copyOf(idxStack, top * 2);
+				sumStack = Arrays.copyOf(sumStack, top * 2);
+				stateStack = Arrays.copyOf(stateStack, top * 2);
+				pathSizes = Arrays.copyOf(pathSizes, top * 2);
+			}
+			idxStack[top] = idx;
+			sumStack[top] = sum;
+			stateStack[top] = 0;
+			pathSizes[top] = pathSize;
+		}
+	}
+
+}
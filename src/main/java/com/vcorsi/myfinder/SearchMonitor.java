@@ -0,0 +1,130 @@
+package com.vcorsi.myfinder;
+
+/**
+ * Connects a running search to its {@link CancellationToken} and
+ * {@link Progress}: finders report their steps to it, and it throws
+ * {@link CancelledException} when the token is cancelled. Nodes are counted
+ * locally by a {@link Counter} and reported in blocks, so that the token and
+ * the shared counters are only touched every {@link #CHECK_INTERVAL} nodes.
+ * 
+ * @author vladimiro
+ * 
+ */
+final class SearchMonitor {
+
+	static final int CHECK_INTERVAL = 4096;
+
+	private final CancellationToken token;
+	private final Progress progress;
+
+	SearchMonitor(final CancellationToken token, final Progress progress) {
+		this.token = token;
+		this.progress = progress;
+	}
+
+	/**
+	 * @return a monitor which is never cancelled
+	 */
+	static SearchMonitor unbounded() {
+		return new SearchMonitor(new CancellationToken(), new Progress());
+	}
+
+	/**
+	 * Reports a row of a matrix.
+	 * 
+	 * @param cells
+	 *            the cells of the row computed
+	 * @param matrixBytes
+	 *            the bytes of the matrix held once the row is built
+	 * @throws CancelledException
+	 */
+	void rowDone(final long cells, final long matrixBytes) {
+		progress.addRows(1);
+		if (Metrics.enabled()) {
+			Metrics.get().rowDone(cells, matrixBytes);
+		}
+		check();
+	}
+
+	/**
+	 * Reports visited nodes.
+	 * 
+	 * @throws CancelledException
+	 */
+	void nodesVisited(final long nodes) {
+		nodesVisited(nodes, 0);
+	}
+
+	/**
+	 * Reports visited nodes, some of which were pruned.
+	 * 
+	 * @throws CancelledException
+	 */
+	void nodesVisited(final long nodes, final long pruned) {
+		progress.addNodes(nodes);
+		if (Metrics.enabled()) {
+			Metrics.get().nodes(nodes, pruned);
+		}
+		check();
+	}
+
+	/**
+	 * @throws CancelledException
+	 *             if the token is cancelled
+	 */
+	void check() {
+		if (token.isCancelled()) {
+			throw new CancelledException();
+		}
+	}
+
+	/**
+	 * @return a counter of nodes for a single thread
+	 */
+	Counter counter() {
+		return new Counter();
+	}
+
+	/**
+	 * Counts the nodes visited by a thread, reporting them every
+	 * {@link SearchMonitor#CHECK_INTERVAL} nodes.
+	 */
+	final class Counter {
+
+		private int pending;
+		private int pruned;
+
+		/**
+		 * @throws CancelledException
+		 */
+		void visit() {
+			if (++pending == CHECK_INTERVAL) {
+				pending = 0;
+				final int p = pruned;
+				pruned = 0;
+				nodesVisited(CHECK_INTERVAL, p);
+			}
+		}
+
+		/**
+		 * Counts a visited node whose subtree was cut.
+		 */
+		void prune() {
+			pruned++;
+		}
+
+		/**
+		 * Reports the nodes not reported yet, without checking the token: the
+		 * search is over.
+		 */
+		void flush() {
+			progress.addNodes(pending);
+			if (Metrics.enabled()) {
+				Metrics.get().nodes(pending, pruned);
+			}
+			pending = 0;
+			pruned = 0;
+		}
+	}
+
+}
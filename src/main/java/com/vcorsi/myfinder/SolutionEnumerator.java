@@ -0,0 +1,38 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Lists every solution of the Accounting Dilemma instead of the first one.
+ * Payments are told apart by their position in the input, so equal amounts
+ * give distinct solutions.
+ * 
+ * @author vladimiro
+ * 
+ */
+public interface SolutionEnumerator {
+
+	/**
+	 * @return an iterator computing the solutions one at a time, as they are
+	 *         requested: arrays of due payments whose sum is the bank
+	 *         transfer. The empty subset is never a solution.
+	 */
+	Iterator<BigDecimal[]> solutions();
+
+	/**
+	 * @param max
+	 *            the largest number of solutions to return, positive
+	 * @return the first max solutions of {@link #solutions()}
+	 * @throws IllegalArgumentException
+	 */
+	List<BigDecimal[]> solutions(int max);
+
+	/**
+	 * @return the number of solutions, without listing them. Long.MAX_VALUE
+	 *         means at least Long.MAX_VALUE solutions.
+	 */
+	long count();
+
+}
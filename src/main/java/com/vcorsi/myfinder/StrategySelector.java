@@ -0,0 +1,360 @@
+package com.vcorsi.myfinder;
+
+import java.util.Random;
+
+/**
+ * Chooses the {@link Finder} solving an input the fastest. The running time
+ * and the memory of each strategy are estimated from statistics of the
+ * input; strategies whose memory exceeds the heap budget are rejected and
+ * the fastest of the others is chosen.
+ * 
+ * Time estimates count abstract units of work (words of a {@link DPFinder}
+ * row, nodes of the {@link SubsetFinder} search tree, subset sums of
+ * {@link MeetInMiddleFinder}) which are turned into nanoseconds by per-unit
+ * costs. The default costs were measured on a typical machine; they can be
+ * calibrated at startup by solving small inputs with each strategy.
+ * 
+ * @author vladimiro
+ * 
+ */
+final class StrategySelector {
+
+	enum Strategy {
+		SUBSET, DP, ROLLING_DP, MEET_IN_MIDDLE
+	}
+
+	/**
+	 * Words of {@link RollingDPFinder} rows computed per word of a
+	 * {@link DPFinder} row: the halves are computed again at each level of
+	 * the divide and conquer, whose sums add up to at most the target.
+	 */
+	static final double ROLLING_DP_FACTOR = 3;
+
+	/**
+	 * Nanoseconds per unit of work of each strategy
+	 */
+	static final class Costs {
+		final double subsetNode;
+		final double dpWord;
+		final double mitmSum;
+
+		Costs(final double subsetNode, final double dpWord,
+				final double mitmSum) {
+			this.subsetNode = subsetNode;
+			this.dpWord = dpWord;
+			this.mitmSum = mitmSum;
+		}
+	}
+
+	static final Costs DEFAULT_COSTS = new Costs(4, 2, 20);
+
+	private static volatile Costs calibratedCosts;
+
+	private final FinderConfig config;
+	private final Costs costs;
+
+	StrategySelector(final FinderConfig config) {
+		this.config = config;
+		this.costs = config.isCalibrate() ? calibratedCosts() : DEFAULT_COSTS;
+	}
+
+	/**
+	 * @return the fastest strategy fitting the heap budget. The
+	 *         {@link SubsetFinder} search only needs memory proportional to
+	 *         the number of payments, so it is chosen when nothing else fits.
+	 */
+	Strategy select(final Amounts amounts, final long sum) {
+		final double budget = heapBudget();
+		Strategy best = Strategy.SUBSET;
+		double bestTime = time(Strategy.SUBSET, amounts, sum);
+		for (Strategy strategy : new Strategy[] { Strategy.DP,
+				Strategy.ROLLING_DP, Strategy.MEET_IN_MIDDLE }) {
+			final double time = time(strategy, amounts, sum);
+			if (time < bestTime && fits(strategy, amounts, sum, budget)) {
+				best = strategy;
+				bestTime = time;
+			}
+		}
+		if (Metrics.enabled()) {
+			Metrics.get().strategyChosen(best, reason(amounts, sum, budget));
+		}
+		return best;
+	}
+
+	/**
+	 * @return the estimates of each strategy, e.g.
+	 *         "DP 1.2 ms 3.4 MB, SUBSET 5.6 ms 0.0 MB, ... budget 512.0 MB"
+	 */
+	private String reason(final Amounts amounts, final long sum,
+			final double budget) {
+		final StringBuilder sb = new StringBuilder();
+		for (Strategy strategy : Strategy.values()) {
+			final double time = time(strategy, amounts, sum);
+			sb.append(strategy.name());
+			if (time == Double.POSITIVE_INFINITY) {
+				sb.append(" unfeasible, ");
+			} else {
+				sb.append(String.format(" %.1f ms %.1f MB, ", time / 1e6,
+						memory(strategy, amounts, sum) / (1 << 20)));
+			}
+		}
+		return sb.append(String.format("budget %.1f MB", budget / (1 << 20)))
+				.toString();
+	}
+
+	/**
+	 * @return true if the strategy can solve the input within the heap budget
+	 */
+	boolean fits(final Strategy strategy, final Amounts amounts,
+			final long sum) {
+		return fits(strategy, amounts, sum, heapBudget());
+	}
+
+	private boolean fits(final Strategy strategy, final Amounts amounts,
+			final long sum, final double budget) {
+		return time(strategy, amounts, sum) < Double.POSITIVE_INFINITY
+				&& memory(strategy, amounts, sum) <= budget;
+	}
+
+	/**
+	 * @return the estimated running time in nanoseconds, infinite if the
+	 *         strategy cannot solve the input
+	 */
+	double time(final Strategy strategy, final Amounts amounts, final long sum) {
+		final int parallelism = config.getParallelism();
+		switch (strategy) {
+		case DP:
+			if (sum > BitsetTable.MAX_CAPACITY) {
+				return Double.POSITIVE_INFINITY;
+			}
+			if (config.isSparse() && config.getOffHeapDirectory() == null) {
+				return costs.mitmSum * amounts.size()
+						* reachableSums(amounts, sum);
+			}
+			// the off-heap matrix is built by a single thread
+			return costs.dpWord * amounts.size() * (columns(amounts, sum) / 64.0 + 1)
+					/ (config.getOffHeapDirectory() == null ? parallelism : 1);
+		case ROLLING_DP:
+			if (sum > BitsetTable.MAX_CAPACITY) {
+				return Double.POSITIVE_INFINITY;
+			}
+			return ROLLING_DP_FACTOR * costs.dpWord * amounts.size()
+					* (columns(amounts, sum) / 64.0 + 1);
+		case MEET_IN_MIDDLE:
+			if (amounts.size() > MeetInMiddleFinder.MAX_VALUES) {
+				return Double.POSITIVE_INFINITY;
+			}
+			return costs.mitmSum * Math.pow(2, (amounts.size() + 1) / 2);
+		default:
+			return costs.subsetNode * searchNodes(amounts, sum) / parallelism;
+		}
+	}
+
+	/**
+	 * @return the estimated memory in bytes
+	 */
+	double memory(final Strategy strategy, final Amounts amounts,
+			final long sum) {
+		switch (strategy) {
+		case DP:
+			if (config.getOffHeapDirectory() != null) {
+				// the row being built and the offsets of the rows in the file
+				return columns(amounts, sum) / 8.0 + 8.0 * amounts.size() + 48;
+			}
+			if (config.isSparse()) {
+				// sums and first values, plus the arrays being merged
+				return 2 * 12 * reachableSums(amounts, sum);
+			}
+			return tableMemory(amounts, sum);
+		case ROLLING_DP:
+			// the two halves being split, then the table of a small half
+			return 4 * (columns(amounts, sum) / 8.0 + 24);
+		case MEET_IN_MIDDLE:
+			return MeetInMiddleFinder.memory(amounts.size());
+		default:
+			return 64.0 * amounts.size() + SubsetFinder.memoBytes(amounts.size());
+		}
+	}
+
+	/**
+	 * @param held
+	 *            bytes already held by the caller
+	 * @param more
+	 *            bytes the caller is about to allocate
+	 * @return true if held plus more bytes fit in the configured heap budget
+	 *         or, without one, if more bytes fit in the free heap, which
+	 *         already excludes the held ones
+	 */
+	boolean fits(final double held, final double more) {
+		return (config.getHeapBudget() > 0 ? held + more : more) <= heapBudget();
+	}
+
+	/**
+	 * @return true if a {@link BitsetTable} up to sum fits in the heap budget
+	 */
+	boolean fitsTable(final Amounts amounts, final long sum) {
+		return sum <= BitsetTable.MAX_CAPACITY
+				&& tableMemory(amounts, sum) <= heapBudget();
+	}
+
+	/**
+	 * @return true if a {@link DPEnumerator} fits in the heap budget: it keeps
+	 *         the {@link BitsetTable} in the heap and counts with an array of
+	 *         a long per column
+	 */
+	boolean fitsEnumerator(final Amounts amounts, final long sum) {
+		return sum <= BitsetTable.MAX_CAPACITY
+				&& tableMemory(amounts, sum) + 8 * (columns(amounts, sum) + 1)
+						<= heapBudget();
+	}
+
+	/**
+	 * @return the bytes of a {@link BitsetTable}: rows only store bits up to
+	 *         the sum of the values they cover
+	 */
+	private static double tableMemory(final Amounts amounts, final long sum) {
+		final long divisor = amounts.gcd(sum);
+		final long columns = sum / divisor;
+		final int[] order = amounts.ascendingOrder();
+		double bytes = 0;
+		double prefix = 0;
+		for (int idx : order) {
+			prefix = Math.min(columns, prefix + amounts.cents(idx) / divisor);
+			bytes += prefix / 8.0 + 24;
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return the number of columns of a dynamic programming row, once
+	 *         amounts and sum are divided by their greatest common divisor
+	 */
+	private static double columns(final Amounts amounts, final long sum) {
+		return sum / amounts.gcd(sum);
+	}
+
+	/**
+	 * @return an upper bound of the number of sums reachable by a subset
+	 */
+	private static double reachableSums(final Amounts amounts, final long sum) {
+		return Math.min(Math.pow(2, amounts.size()),
+				columns(amounts, sum) + 1);
+	}
+
+	/**
+	 * Estimates the nodes of the {@link SubsetFinder} search tree. Values
+	 * larger than the sum are skipped, and the search only follows subsets
+	 * whose sum does not exceed the target: the tree is 2^n times the
+	 * probability that a random subset of the values sums up to at most the
+	 * target (or, symmetrically, to at least the target), approximated with a
+	 * normal distribution.
+	 */
+	static double searchNodes(final Amounts amounts, final long sum) {
+		int n = 0;
+		double total = 0;
+		double squares = 0;
+		for (int i = 0; i < amounts.size(); i++) {
+			final double v = amounts.cents(i);
+			if (v <= sum) {
+				n++;
+				total += v;
+				squares += v * v;
+			}
+		}
+		if (n == 0) {
+			return 1;
+		}
+		final double mean = total / 2;
+		final double sd = Math.sqrt(squares) / 2;
+		final double z = (Math.min(sum, total - sum) - mean) / sd;
+		return Math.max(n, Math.pow(2, n) * normalCdf(z));
+	}
+
+	/**
+	 * Standard normal cumulative distribution, Abramowitz and Stegun 26.2.17
+	 */
+	private static double normalCdf(final double z) {
+		final double t = 1 / (1 + 0.2316419 * Math.abs(z));
+		final double poly = t
+				* (0.319381530 + t
+						* (-0.356563782 + t
+								* (1.781477937 + t
+										* (-1.821255978 + t * 1.330274429))));
+		final double tail = Math.exp(-z * z / 2) / Math.sqrt(2 * Math.PI)
+				* poly;
+		return z >= 0 ? 1 - tail : tail;
+	}
+
+	private double heapBudget() {
+		if (config.getHeapBudget() > 0) {
+			return config.getHeapBudget();
+		}
+		final Runtime runtime = Runtime.getRuntime();
+		return runtime.maxMemory()
+				- (runtime.totalMemory() - runtime.freeMemory());
+	}
+
+	/**
+	 * @return the costs measured on this machine, measuring them on the first
+	 *         call
+	 */
+	static Costs calibratedCosts() {
+		Costs result = calibratedCosts;
+		if (result == null) {
+			synchronized (StrategySelector.class) {
+				result = calibratedCosts;
+				if (result == null) {
+					result = calibrate();
+					calibratedCosts = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Solves a small NO SOLUTION input with each strategy and divides the best
+	 * of a few runs by the estimated units of work. It takes less than a
+	 * second. The values are multiples of 6 plus a 2 and a 3, so that their
+	 * greatest common divisor is 1 but no subset sums up to 1 modulo 6.
+	 */
+	private static Costs calibrate() {
+		final Random random = new Random(42);
+		final long[] values = new long[22];
+		values[0] = 2;
+		values[1] = 3;
+		long sum = 1;
+		for (int i = 2; i < values.length; i++) {
+			values[i] = 6 * (1 + random.nextInt(35000));
+			if (i % 3 == 0) {
+				sum += values[i];
+			}
+		}
+		final Amounts amounts = Amounts.of(values);
+		final StrategySelector units = new StrategySelector(new FinderConfig(),
+				new Costs(1, 1, 1));
+		final FinderConfig sequential = new FinderConfig();
+		return new Costs(nanos(new SubsetFinder(amounts, sum, sequential))
+				/ units.time(Strategy.SUBSET, amounts, sum),
+				nanos(new DPFinder(amounts, sum, sequential))
+						/ units.time(Strategy.DP, amounts, sum),
+				nanos(new MeetInMiddleFinder(amounts, sum))
+						/ units.time(Strategy.MEET_IN_MIDDLE, amounts, sum));
+	}
+
+	private StrategySelector(final FinderConfig config, final Costs costs) {
+		this.config = config;
+		this.costs = costs;
+	}
+
+	private static double nanos(final Finder finder) {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < 20; i++) {
+			final long start = System.nanoTime();
+			finder.find();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+}
@@ -0,0 +1,54 @@
+package com.vcorsi.myfinder;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter updated by many threads at once: each thread adds to one of
+ * several cells, chosen by its id, and the cells are only summed when the
+ * counter is read. Cells are a cache line apart, so that threads updating
+ * different cells do not contend for the same line.
+ * 
+ * @author vladimiro
+ * 
+ */
+final class StripedCounter {
+
+	/**
+	 * longs in a cache line
+	 */
+	private static final int PADDING = 8;
+
+	private final AtomicLongArray cells;
+	private final int mask;
+
+	StripedCounter() {
+		final int stripes = Integer.highestOneBit(Math.max(1, Runtime
+				.getRuntime().availableProcessors() - 1) << 1);
+		this.cells = new AtomicLongArray(stripes * PADDING);
+		this.mask = stripes - 1;
+	}
+
+	void add(final long x) {
+		// spreads consecutive thread ids
+		final int hash = (int) (Thread.currentThread().getId() * 0x9E3779B9L);
+		cells.getAndAdd(((hash ^ hash >>> 16) & mask) * PADDING, x);
+	}
+
+	/**
+	 * @return the sum of the cells; updates made while summing may be missed
+	 */
+	long sum() {
+		long sum = 0;
+		for (int i = 0; i < cells.length(); i += PADDING) {
+			sum += cells.get(i);
+		}
+		return sum;
+	}
+
+	void reset() {
+		for (int i = 0; i < cells.length(); i += PADDING) {
+			cells.set(i, 0);
+		}
+	}
+
+}
@@ -1,21 +1,83 @@
 package com.vcorsi.myfinder;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Searches the space of all possible subsets to find a
  * solution to the Accounting Dilemma problem.
  * 
+ * Values are visited by descending amount, and a branch is cut in O(1) when
+ * the remaining values cannot reach the sum it still needs: when their total
+ * (a precomputed suffix sum) is lower, or when no subset of them has the
+ * same remainder modulo {@link #MODULUS} (a precomputed bitset of the
+ * reachable remainders). Branches found to have no solution are remembered
+ * in a bounded hash table, so that the same remaining sum reached through
+ * another path is not searched again.
+ * 
+ * The search does not recurse: the branches being visited are kept on a
+ * preallocated stack of primitives and the values chosen on the way in a
+ * bitset, both reused from one search to the next. No object is allocated
+ * per node, and any number of values is searched without overflowing the
+ * thread stack.
+ * 
+ * When the configured parallelism is greater than 1 the include/exclude
+ * branches of the search tree are split into fork/join tasks down to the
+ * configured depth; below it each task searches sequentially. As soon as a
+ * task finds a solution all the other tasks stop.
+ * 
  * @author vladimiro
  * 
  */
-class SubsetFinder implements Finder {
+class SubsetFinder extends AbstractFinder {
+
+	/**
+	 * modulus of the remainders tracked for each suffix of the values: one bit
+	 * per remainder in a long
+	 */
+	static final int MODULUS = 64;
+	/**
+	 * Branches with fewer remaining values are searched again rather than
+	 * remembered: searching them costs less than the table.
+	 */
+	static final int MEMO_MIN_VALUES = 8;
+	/**
+	 * largest number of entries of the table of failed branches
+	 */
+	static final int MEMO_MAX_ENTRIES = 1 << 20;
+
+	private static final int[] NONE = {};
 
-	private final BigDecimal[] sortedValues;
-	private final BigDecimal sum;
+	/**
+	 * values in cents sorted by descending amount
+	 */
+	private final long[] sortedValues;
+	/**
+	 * suffixSums[i] is the sum of sortedValues[i..], saturated at
+	 * Long.MAX_VALUE
+	 */
+	private final long[] suffixSums;
+	/**
+	 * bit r of remainders[i] is set if a subset of sortedValues[i..] sums to r
+	 * modulo MODULUS
+	 */
+	private final long[] remainders;
+	/**
+	 * sortedValues[i] is the amount at index order[i]
+	 */
+	private final int[] order;
+	private final FinderConfig config;
+	/**
+	 * the solution found by a parallel search, checked by the tasks still
+	 * running so that they stop
+	 */
+	private volatile int[] parallelSolution;
+	/**
+	 * the search state of each thread of a parallel search
+	 */
+	private ThreadLocal<Search> searches;
 
 	/**
 	 * @param values
@@ -23,102 +85,364 @@ class SubsetFinder implements Finder {
 	 * @throws IllegalArgumentException
 	 */
 	SubsetFinder(final BigDecimal[] values, final BigDecimal sum) {
-		if (values == null) {
-			throw new NullPointerException("Values cannot be null");
+		this(Amounts.of(values), Cents.of(sum));
+	}
+
+	SubsetFinder(final Amounts amounts, final long sum) {
+		this(amounts, sum, new FinderConfig());
+	}
+
+	SubsetFinder(final Amounts amounts, final long sum,
+			final FinderConfig config) {
+		super(amounts, sum);
+		this.config = config;
+		final int[] ascending = amounts.ascendingOrder();
+		this.order = new int[ascending.length];
+		this.sortedValues = new long[ascending.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = ascending[ascending.length - 1 - i];
+			sortedValues[i] = amounts.cents(order[i]);
 		}
-		if (sum.compareTo(BigDecimal.ZERO) < 0) {
-			throw new IllegalArgumentException("Sum cannot be negative");
+		this.suffixSums = new long[order.length + 1];
+		this.remainders = new long[order.length + 1];
+		remainders[order.length] = 1L;
+		for (int i = order.length - 1; i >= 0; i--) {
+			final long value = sortedValues[i];
+			suffixSums[i] = value > Long.MAX_VALUE - suffixSums[i + 1] ? Long.MAX_VALUE
+					: suffixSums[i + 1] + value;
+			remainders[i] = remainders[i + 1]
+					| Long.rotateLeft(remainders[i + 1], (int) (value % MODULUS));
+		}
+	}
+
+	/**
+	 * @return the bytes of the table of failed branches
+	 */
+	static long memoBytes(final int numOfValues) {
+		return 12L * Memo.capacity(numOfValues);
+	}
+
+	@Override
+	protected int[] findIdx(final SearchMonitor monitor) {
+		final int[] idxes;
+		if (config.getParallelism() > 1) {
+			idxes = parallelFind(monitor);
+		} else {
+			final SearchMonitor.Counter nodes = monitor.counter();
+			idxes = new Search().find(0, sum, nodes);
+			nodes.flush();
 		}
-		if (values.length == 0) {
-			throw new IllegalArgumentException("Values cannot be empty");
+		for (int i = 0; i < idxes.length; i++) {
+			idxes[i] = order[idxes[i]];
 		}
-		for (int i = 0; i < values.length; i++) {
-			if (values[i] == null || values[i].compareTo(BigDecimal.ZERO) < 0) {
-				throw new IllegalArgumentException("Invalid values");
+		return idxes;
+	}
+
+	/**
+	 * @return true if no subset of the values from start sums to sum, which is
+	 *         positive
+	 */
+	private boolean cannotReach(final int start, final long sum) {
+		return suffixSums[start] < sum
+				|| (remainders[start] >>> (sum % MODULUS) & 1L) == 0;
+	}
+
+	private int[] parallelFind(final SearchMonitor monitor) {
+		parallelSolution = null;
+		// a state per thread, reused by its tasks: failed branches stay
+		// failed whichever task found them
+		searches = new ThreadLocal<Search>() {
+
+			@Override
+			protected Search initialValue() {
+				return new Search();
 			}
+		};
+		final ForkJoinPool pool = new ForkJoinPool(config.getParallelism());
+		try {
+			pool.invoke(new SearchTask(0, sum, 0, null, monitor));
+		} finally {
+			pool.shutdown();
 		}
-		final BigDecimal[] sorted = values.clone();
-		Arrays.sort(sorted, Collections.reverseOrder());
-		sortedValues = sorted;
-		this.sum = sum;
+		final int[] result = parallelSolution;
+		return result == null ? new int[] {} : result;
 	}
 
 	/**
-	 * @param sum
-	 *            A non negative value.
-	 * @return An array of values, chosen between the ones given in constructor,
-	 *         corresponding to a solution of the problem. If no solution is
-	 *         found an empty array is returned.
-	 * @throws IllegalArgumentException
+	 * State of the sequential search of a thread. Each branch being visited
+	 * has an entry on the stack: the index of its value and the sum it has to
+	 * satisfy. The value is in the selection while the branch including it is
+	 * searched, and out of it while the branch without it is.
 	 */
-	@Override
-	public BigDecimal[] find() {
-		BigDecimal valueSum = BigDecimal.ZERO;
-		for(BigDecimal d : sortedValues){
-			valueSum = valueSum.add(d);
+	private final class Search {
+
+		private final int[] starts;
+		private final long[] sums;
+		private final long[] selection;
+		private final Memo memo;
+
+		Search() {
+			// the indexes on the stack increase: one entry per value at most
+			this.starts = new int[sortedValues.length];
+			this.sums = new long[sortedValues.length];
+			this.selection = new long[(sortedValues.length + 63) >>> 6];
+			this.memo = new Memo(sortedValues.length);
 		}
-		if(sum.compareTo(valueSum) > 0){
-		    return new BigDecimal[0];	
+
+		/**
+		 * @param start
+		 *            index where to start the search
+		 * @param sum
+		 *            sum to be satisfied, positive
+		 * @param nodes
+		 *            counts the nodes visited
+		 * @return array of indexes of values satisfying the sum, by descending
+		 *         index
+		 * @throws CancelledException
+		 */
+		int[] find(int start, long sum, final SearchMonitor.Counter nodes) {
+			assert (sum > 0);
+			assert (start <= sortedValues.length);
+			int top = 0;
+			while (true) {
+				nodes.visit();
+				if (parallelSolution != null) {
+					// another task found a solution
+					Arrays.fill(selection, 0L);
+					return NONE;
+				}
+				if (!cannotReach(start, sum)) {
+					final long startVal = sortedValues[start];
+					if (startVal > sum) {
+						// too big, search for a solution without start
+						start++;
+						continue;
+					}
+					if (startVal == sum) {
+						// we have a solution
+						selection[start >>> 6] |= 1L << start;
+						return solution();
+					}
+					if (sortedValues.length - start < MEMO_MIN_VALUES
+							|| !memo.contains(start, sum)) {
+						// it is possible to have a solution including start
+						// and there are still values to visit
+						starts[top] = start;
+						sums[top] = sum;
+						top++;
+						selection[start >>> 6] |= 1L << start;
+						start++;
+						sum -= startVal;
+						continue;
+					}
+				}
+				// the remaining values are too small, none of their subsets
+				// has the remainder of sum or the branch is known to fail
+				nodes.prune();
+				// back to the last branch not searched without its value
+				while (true) {
+					if (top == 0) {
+						return NONE;
+					}
+					final int open = starts[top - 1];
+					if ((selection[open >>> 6] & 1L << open) != 0) {
+						// no solution including open, we search without it
+						selection[open >>> 6] &= ~(1L << open);
+						start = open + 1;
+						sum = sums[top - 1];
+						break;
+					}
+					// no solution without it either
+					if (sortedValues.length - open >= MEMO_MIN_VALUES) {
+						memo.add(open, sums[top - 1]);
+					}
+					top--;
+				}
+			}
 		}
-		if(sum.compareTo(valueSum) == 0){
-			return sortedValues;
+
+		/**
+		 * @return the indexes in the selection, by descending index, leaving
+		 *         it empty
+		 */
+		private int[] solution() {
+			int size = 0;
+			for (final long word : selection) {
+				size += Long.bitCount(word);
+			}
+			final int[] result = new int[size];
+			int i = 0;
+			for (int w = selection.length - 1; w >= 0; w--) {
+				long word = selection[w];
+				while (word != 0) {
+					final int bit = 63 - Long.numberOfLeadingZeros(word);
+					result[i++] = (w << 6) + bit;
+					word &= ~(1L << bit);
+				}
+				selection[w] = 0;
+			}
+			return result;
 		}
-		
-		final int[] idxes = find(0, sum);
-		final BigDecimal[] result = new BigDecimal[idxes.length];
-		for (int i = 0; i < result.length; i++) {
-			result[i] = sortedValues[idxes[i]];
+	}
+
+	/**
+	 * Indexes chosen on the path from the root of the search tree to a task
+	 */
+	private static final class Path {
+		final int idx;
+		final Path parent;
+		final int length;
+
+		Path(final int idx, final Path parent) {
+			this.idx = idx;
+			this.parent = parent;
+			this.length = parent == null ? 1 : parent.length + 1;
 		}
-		return result;
 	}
 
 	/**
-	 * @param start
-	 *            index where to start the search
-	 * @param sum
-	 *            sum to be satisfied
-	 * @return array of indexes of values satisfying the sum
-	 */
-	private int[] find(int start, BigDecimal sum) {
-		assert (sum.compareTo(BigDecimal.ZERO) >= 0);
-		assert (start < sortedValues.length);
-		final BigDecimal startVal = sortedValues[start];
-		if (startVal.compareTo(sum) > 0) {
-			if (start < sortedValues.length - 1) {
-				// too big, search for a solution without start
-				return find(start + 1, sum);
-			} else {
-				// start is last index, no solution: base step for recursion.
-				return new int[] {};
+	 * Searches the subtree rooted at start, having already chosen path. It
+	 * follows the same steps as {@link Search#find(int, long, SearchMonitor.Counter)},
+	 * but forks the two branches instead of visiting them one after the other.
+	 */
+	private final class SearchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int start;
+		private final long sum;
+		private final int depth;
+		private final Path path;
+		private final SearchMonitor monitor;
+
+		SearchTask(final int start, final long sum, final int depth,
+				final Path path, final SearchMonitor monitor) {
+			this.start = start;
+			this.sum = sum;
+			this.depth = depth;
+			this.path = path;
+			this.monitor = monitor;
+		}
+
+		@Override
+		protected void compute() {
+			if (parallelSolution != null) {
+				return;
+			}
+			if (depth >= config.getSplitDepth()) {
+				final SearchMonitor.Counter nodes = monitor.counter();
+				publish(searches.get().find(start, sum, nodes));
+				nodes.flush();
+				return;
 			}
+			monitor.nodesVisited(1);
+			if (cannotReach(start, sum)) {
+				monitor.nodesVisited(0, 1);
+				return;
+			}
+			int first = start;
+			while (first < sortedValues.length && sortedValues[first] > sum) {
+				// too big, search for a solution without it
+				first++;
+			}
+			if (first == sortedValues.length) {
+				return;
+			}
+			final long firstVal = sortedValues[first];
+			if (firstVal == sum) {
+				publish(new int[] { first });
+				return;
+			}
+			invokeAll(new SearchTask(first + 1, sum - firstVal, depth + 1,
+					new Path(first, path), monitor), new SearchTask(first + 1,
+					sum, depth + 1, path, monitor));
 		}
-		if (startVal.compareTo(sum) == 0) {
-			// we have a solution. Base step for recursion.
-			return new int[] { start };
-		}
-		final int numOfElements = sortedValues.length - start;
-		final BigDecimal average = sum.divide(
-				BigDecimal.valueOf(numOfElements), 2, RoundingMode.DOWN);
-		if (startVal.compareTo(average) < 0) {
-			// Since values are sorted it's impossible to reach sum.
-			// When we are at last element, average equals to sum: so this is a base
-			// step for our recursion.
-			assert (numOfElements != 1 || average.compareTo(sum) == 0);
-			return new int[] {};
-		}
-		// ok, it is possible to have a solution including start and there are
-		// still values to visit
-		final int[] remainingIndexes = find(start + 1, sum.subtract(startVal));
-		if (remainingIndexes.length == 0) {
-			// no solution including start, we search without start
-			final int[] remainingIndexesWithout = find(start + 1, sum);
-			return remainingIndexesWithout;
-		} else {
-			// solution found
-			final int[] result = Arrays.copyOf(remainingIndexes,
-					remainingIndexes.length + 1);
-			result[remainingIndexes.length] = start;
-			return result;
+
+		private void publish(final int[] idxes) {
+			if (idxes.length == 0) {
+				return;
+			}
+			final int pathLength = path == null ? 0 : path.length;
+			final int[] result = Arrays.copyOf(idxes, idxes.length
+					+ pathLength);
+			int i = idxes.length;
+			for (Path p = path; p != null; p = p.parent) {
+				result[i++] = p.idx;
+			}
+			synchronized (SubsetFinder.this) {
+				if (parallelSolution == null) {
+					parallelSolution = result;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Bounded open addressing table of the (start, sum) branches with no
+	 * solution. A key is looked for in {@link #PROBES} slots from its hash;
+	 * when they are all taken a new key replaces the first one, so the table
+	 * never grows and only forgets branches.
+	 */
+	static final class Memo {
+
+		static final int PROBES = 8;
+
+		private final long[] sums;
+		/**
+		 * start + 1, 0 for an empty slot
+		 */
+		private final int[] starts;
+		private final int mask;
+
+		Memo(final int numOfValues) {
+			final int capacity = capacity(numOfValues);
+			this.sums = new long[capacity];
+			this.starts = new int[capacity];
+			this.mask = capacity - 1;
+		}
+
+		/**
+		 * @return the number of entries for a search over numOfValues values
+		 */
+		static int capacity(final int numOfValues) {
+			return (int) Math.min(MEMO_MAX_ENTRIES,
+					Long.highestOneBit(Math.max(numOfValues, 1)) << 10);
+		}
+
+		boolean contains(final int start, final long sum) {
+			final int home = slot(start, sum);
+			for (int i = 0; i < PROBES; i++) {
+				final int slot = (home + i) & mask;
+				if (starts[slot] == 0) {
+					return false;
+				}
+				if (starts[slot] == start + 1 && sums[slot] == sum) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		void add(final int start, final long sum) {
+			final int home = slot(start, sum);
+			int slot = home;
+			for (int i = 0; i < PROBES; i++) {
+				final int s = (home + i) & mask;
+				if (starts[s] == 0) {
+					slot = s;
+					break;
+				}
+			}
+			starts[slot] = start + 1;
+			sums[slot] = sum;
+		}
+
+		private int slot(final int start, final long sum) {
+			long h = sum * 0x9E3779B97F4A7C15L + start;
+			h ^= h >>> 32;
+			h *= 0xC2B2AE3D27D4EB4FL;
+			return (int) (h ^ h >>> 29) & mask;
 		}
 	}
 
@@ -0,0 +1,121 @@
+package com.vcorsi.myfinder;
+
+import java.util.Arrays;
+
+/**
+ * Sparse alternative to {@link BitsetTable}: only the reachable sums are
+ * stored, as a sorted array, instead of a bit for every sum up to the
+ * capacity. Adding a value merges the array with a copy shifted by the value,
+ * so each value costs a step per reachable sum.
+ * 
+ * For every sum the set remembers the value which made it reachable first;
+ * the sum minus that value was reachable before, with earlier values only,
+ * so the subset is rebuilt by following these values back to 0.
+ * 
+ * It pays off when the reachable sums are few compared to the capacity, for
+ * instance few large payments.
+ * 
+ * @author vladimiro
+ * 
+ */
+final class SumSet {
+
+	private final long[] values;
+	private final long capacity;
+	private final SearchMonitor monitor;
+	private long[] sums = new long[] { 0 };
+	/**
+	 * index of the value which made each sum reachable first, -1 for 0
+	 */
+	private int[] firstValues = new int[] { -1 };
+	private int size = 1;
+
+	/**
+	 * @param values
+	 *            non negative values, in the order they are added
+	 * @param capacity
+	 *            the largest sum of interest
+	 * @param monitor
+	 *            told about every added value
+	 */
+	SumSet(final long[] values, final long capacity,
+			final SearchMonitor monitor) {
+		this.values = values;
+		this.capacity = capacity;
+		this.monitor = monitor;
+	}
+
+	/**
+	 * Adds values until the target becomes reachable.
+	 * 
+	 * @param target
+	 *            a positive sum not greater than capacity
+	 * @return true if the target is reachable
+	 * @throws CancelledException
+	 */
+	boolean build(final long target) {
+		assert (target > 0 && target <= capacity);
+		for (int i = 0; i < values.length; i++) {
+			final long value = values[i];
+			if (value > 0 && value <= capacity) {
+				add(i, value);
+			}
+			// the sums and their first values
+			monitor.rowDone(size, 12L * sums.length);
+			if (Arrays.binarySearch(sums, 0, size, target) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void add(final int idx, final long value) {
+		final long[] newSums = new long[size * 2];
+		final int[] newFirstValues = new int[size * 2];
+		final long limit = capacity - value;
+		int a = 0;
+		int b = 0;
+		int n = 0;
+		while (a < size) {
+			if (b < size && sums[b] <= limit && sums[b] + value <= sums[a]) {
+				if (sums[b] + value < sums[a]) {
+					newSums[n] = sums[b] + value;
+					newFirstValues[n++] = idx;
+				}
+				// a sum already reachable keeps its first value
+				b++;
+			} else {
+				newSums[n] = sums[a];
+				newFirstValues[n++] = firstValues[a++];
+			}
+		}
+		while (b < size && sums[b] <= limit) {
+			newSums[n] = sums[b++] + value;
+			newFirstValues[n++] = idx;
+		}
+		sums = newSums;
+		firstValues = newFirstValues;
+		size = n;
+	}
+
+	/**
+	 * @param target
+	 *            a reachable sum
+	 * @return indexes of the values summing to target
+	 */
+	int[] reconstruct(final long target) {
+		int[] result = new int[16];
+		int count = 0;
+		long t = target;
+		while (t > 0) {
+			final int idx = firstValues[Arrays.binarySearch(sums, 0, size, t)];
+			if (count == result.length) {
+				result = Arrays.copyOf(result, count * 2);
+			}
+			result[count++] = idx;
+			t -= values[idx];
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+}
@@ -0,0 +1,138 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+
+/**
+ * Finds the subset of the due payments whose sum is the closest to the bank
+ * transfer, within a tolerance: bank fees and currency conversions often make
+ * the transfer differ from the payments by a few cents.
+ *
+ * The rows of a {@link BitsetTable} are built up to the transfer plus the
+ * tolerance, then the last row, which holds every reachable sum, is scanned
+ * outwards from the transfer. When two sums are equally close the larger one
+ * is chosen, since fees are deducted from the transfer. Amounts are divided by
+ * their greatest common divisor, as in {@link DPFinder}.
+ *
+ * @author vladimiro
+ *
+ */
+class ToleranceFinder implements CancellableFinder {
+
+	private final Amounts amounts;
+	private final long sum;
+	private final long tolerance;
+	private final FinderConfig config;
+
+	/**
+	 * @param amounts
+	 *            the due payments
+	 * @param sum
+	 *            the bank transfer in cents, non negative
+	 * @param tolerance
+	 *            the largest difference in cents between the transfer and the
+	 *            sum of the solution, non negative
+	 * @param config
+	 *            tuning parameters
+	 * @throws IllegalArgumentException
+	 */
+	ToleranceFinder(final Amounts amounts, final long sum,
+			final long tolerance, final FinderConfig config) {
+		if (sum < 0) {
+			throw new IllegalArgumentException("Sum cannot be negative");
+		}
+		if (tolerance < 0) {
+			throw new IllegalArgumentException("Tolerance cannot be negative");
+		}
+		this.amounts = amounts;
+		this.sum = sum;
+		this.tolerance = tolerance;
+		this.config = config;
+	}
+
+	/**
+	 * @return the due payments whose sum is the closest to the transfer, empty
+	 *         if no sum is within the tolerance
+	 */
+	@Override
+	public BigDecimal[] find() {
+		return find(new CancellationToken(), new Progress()).getSolution();
+	}
+
+	@Override
+	public FindResult find(final CancellationToken token,
+			final Progress progress) {
+		final int[] idxes;
+		try {
+			idxes = findIdx(new SearchMonitor(token, progress));
+		} catch (CancelledException e) {
+			return new FindResult(token.isExpired() ? FindResult.Status.TIMEOUT
+					: FindResult.Status.CANCELLED, new BigDecimal[0]);
+		}
+		return new FindResult(idxes.length == 0 ? FindResult.Status.NO_SOLUTION
+				: FindResult.Status.SOLVED, amounts.values(idxes));
+	}
+
+	/**
+	 * @return the largest sum of the table: the transfer plus the tolerance,
+	 *         at most the sum of the due payments
+	 */
+	long capacity() {
+		return Math.min(sum > Long.MAX_VALUE - tolerance ? Long.MAX_VALUE : sum
+				+ tolerance, amounts.total());
+	}
+
+	private int[] findIdx(final SearchMonitor monitor) {
+		final long max = capacity();
+		final long min = Math.max(sum - tolerance, 0);
+		if (min > max) {
+			return new int[0];
+		}
+		final long divisor = amounts.gcd(max);
+		final int[] order = amounts.ascendingOrder();
+		final BitsetTable table = new BitsetTable(amounts.scaled(order, max,
+				divisor), max / divisor, monitor);
+		table.buildAll(config.getParallelism());
+		final long[] reachable = table.row(table.builtRows() - 1);
+		for (long d = 0; d <= tolerance; d++) {
+			final long above = sum + d;
+			if (above <= max && reachable(reachable, above, divisor)) {
+				return solution(table, order, above / divisor);
+			}
+			final long below = sum - d;
+			if (below >= min && reachable(reachable, below, divisor)) {
+				return solution(table, order, below / divisor);
+			}
+			if (above >= max && below <= min) {
+				break;
+			}
+		}
+		return new int[0];
+	}
+
+	/**
+	 * @return true if a non empty subset of the due payments sums to s
+	 */
+	private boolean reachable(final long[] row, final long s,
+			final long divisor) {
+		if (s == 0) {
+			return AbstractFinder.trivialSolution(amounts, 0).length > 0;
+		}
+		return s % divisor == 0 && BitsetTable.get(row, s / divisor);
+	}
+
+	/**
+	 * @return the indexes of the due payments summing to target, scaled
+	 */
+	private int[] solution(final BitsetTable table, final int[] order,
+			final long target) {
+		if (target == 0) {
+			return AbstractFinder.trivialSolution(amounts, 0);
+		}
+		final int[] idxes = table.reconstruct(table.firstRow(target), target);
+		for (int i = 0; i < idxes.length; i++) {
+			idxes[i] = order[idxes[i]];
+		}
+		return idxes;
+	}
+
+}
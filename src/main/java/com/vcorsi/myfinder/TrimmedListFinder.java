@@ -0,0 +1,245 @@
+package com.vcorsi.myfinder;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Fully polynomial approximation of the Accounting Dilemma, for transfers
+ * whose matrix cannot be allocated. Given an error e it finds a subset whose
+ * sum s is at most the transfer S and at least min(OPT / (1 + e), S - e * S),
+ * OPT being the largest subset sum not exceeding the transfer, in
+ * O(n^2 * log(1 / e) / e): the running time does not depend on the transfer.
+ * For details see
+ * https://en.wikipedia.org/wiki/Subset_sum_problem#Fully-polynomial_time_approximation_scheme
+ *
+ * Only the m values larger than e * S go through a sorted list of reachable
+ * sums, extended by one value at a time and then trimmed: a sum is dropped
+ * when it is within a factor 1 + e / 2m of the previous one kept, which
+ * stands for it. Sums in the list are 0 or above e * S, so it holds at most
+ * 2m * ln(1 / e) / e sums. The smaller values are then added to the largest
+ * sum of the list, largest first, as long as they fit. Every sum kept points
+ * to the sum it was extended from, so the subset is rebuilt by following
+ * these links; the links of the sums trimmed away are dropped from time to
+ * time.
+ *
+ * @author vladimiro
+ *
+ */
+class TrimmedListFinder implements ApproximateFinder {
+
+	private final Amounts amounts;
+	private final long sum;
+	private final double epsilon;
+
+	/**
+	 * node of each sum kept: the index of the value added and the node it was
+	 * extended from, -1 for the empty subset
+	 */
+	private int[] items;
+	private int[] parents;
+	private int numOfNodes;
+	/**
+	 * number of nodes left by the last compaction
+	 */
+	private int liveNodes;
+
+	/**
+	 * @param amounts
+	 *            the due payments
+	 * @param sum
+	 *            the bank transfer in cents, non negative
+	 * @param epsilon
+	 *            the relative error, in (0, 1]
+	 * @throws IllegalArgumentException
+	 */
+	TrimmedListFinder(final Amounts amounts, final long sum,
+			final double epsilon) {
+		if (sum < 0) {
+			throw new IllegalArgumentException("Sum cannot be negative");
+		}
+		if (!(epsilon > 0 && epsilon <= 1)) {
+			throw new IllegalArgumentException("Epsilon must be in (0, 1]");
+		}
+		this.amounts = amounts;
+		this.sum = sum;
+		this.epsilon = epsilon;
+	}
+
+	@Override
+	public BigDecimal[] find() {
+		return findApproximate().getSolution();
+	}
+
+	@Override
+	public ApproximateResult findApproximate() {
+		return findApproximate(new CancellationToken());
+	}
+
+	/**
+	 * The token is checked after merging each value in the list.
+	 */
+	@Override
+	public ApproximateResult findApproximate(final CancellationToken token) {
+		try {
+			return findApproximate(new SearchMonitor(token, new Progress()));
+		} catch (CancelledException e) {
+			return new ApproximateResult(token.isExpired() ? FindResult.Status.TIMEOUT
+					: FindResult.Status.CANCELLED);
+		} finally {
+			items = null;
+			parents = null;
+		}
+	}
+
+	private ApproximateResult findApproximate(final SearchMonitor monitor) {
+		final int[] trivial = AbstractFinder.trivialSolution(amounts, sum);
+		if (trivial != null && trivial.length > 0) {
+			return new ApproximateResult(amounts.values(trivial), sum, 0);
+		}
+		// values above e * S go through the list, the others are added later
+		final int[] order = amounts.ascendingOrder();
+		int end = order.length;
+		while (end > 0 && amounts.cents(order[end - 1]) > sum) {
+			end--;
+		}
+		int firstLarge = end;
+		while (firstLarge > 0
+				&& amounts.cents(order[firstLarge - 1]) > epsilon * sum) {
+			firstLarge--;
+		}
+		final double factor = 1 + epsilon / (2 * Math.max(end - firstLarge, 1));
+		items = new int[16];
+		parents = new int[16];
+		numOfNodes = 0;
+		liveNodes = 0;
+		long[] sums = new long[] { 0 };
+		int[] nodes = new int[] { -1 };
+		int size = 1;
+		long[] nextSums = new long[16];
+		int[] nextNodes = new int[16];
+		for (int k = firstLarge; k < end && sums[size - 1] < sum; k++) {
+			final int i = order[k];
+			final long value = amounts.cents(i);
+			if (nextSums.length < 2 * size) {
+				nextSums = new long[2 * size];
+				nextNodes = new int[2 * size];
+			}
+			// merge the list with the list plus value, trimming
+			int next = 0;
+			int a = 0;
+			int b = 0;
+			double threshold = -1;
+			while (a < size || b < size && sums[b] + value <= sum) {
+				final boolean extend = b < size && sums[b] + value <= sum
+						&& (a == size || sums[b] + value < sums[a]);
+				final long s = extend ? sums[b] + value : sums[a];
+				if (s > threshold) {
+					nextSums[next] = s;
+					nextNodes[next] = extend ? node(i, nodes[b]) : nodes[a];
+					next++;
+					threshold = s * factor;
+				}
+				if (extend) {
+					b++;
+				} else {
+					a++;
+				}
+			}
+			final long[] swapSums = sums;
+			sums = nextSums;
+			nextSums = swapSums;
+			final int[] swapNodes = nodes;
+			nodes = nextNodes;
+			nextNodes = swapNodes;
+			size = next;
+			if (numOfNodes > 2 * liveNodes + 2 * size) {
+				compact(nodes, size);
+			}
+			monitor.nodesVisited(size);
+		}
+		int[] idxes = subset(nodes[size - 1]);
+		long best = sums[size - 1];
+		// the small values, largest first, while they fit
+		final int numOfLarge = idxes.length;
+		idxes = Arrays.copyOf(idxes, numOfLarge + firstLarge);
+		int numOfValues = numOfLarge;
+		boolean allFit = true;
+		for (int k = firstLarge - 1; k >= 0; k--) {
+			final long value = amounts.cents(order[k]);
+			if (value == 0) {
+				continue;
+			}
+			if (value <= sum - best) {
+				best += value;
+				idxes[numOfValues++] = order[k];
+			} else {
+				allFit = false;
+			}
+		}
+		idxes = Arrays.copyOf(idxes, numOfValues);
+		// When all the small values fit best >= OPT / (1 + e), otherwise a
+		// value below e * S was left out and best > S - e * S. OPT <= S anyway.
+		final long errorBound = allFit ? Math.min(sum - best,
+				(long) (best * epsilon)) : sum - best;
+		return new ApproximateResult(amounts.values(idxes), best, errorBound);
+	}
+
+	/**
+	 * @return a new node for the sum extending parent with the value at idx
+	 */
+	private int node(final int idx, final int parent) {
+		if (numOfNodes == items.length) {
+			items = Arrays.copyOf(items, numOfNodes * 2);
+			parents = Arrays.copyOf(parents, numOfNodes * 2);
+		}
+		items[numOfNodes] = idx;
+		parents[numOfNodes] = parent;
+		return numOfNodes++;
+	}
+
+	/**
+	 * Drops the nodes which are not on the path of a sum of the list: most
+	 * sums are trimmed soon after being created, and so are their nodes.
+	 * Parents are created before their children, so the nodes kept are moved
+	 * down in one pass.
+	 */
+	private void compact(final int[] nodes, final int size) {
+		final int[] ids = new int[numOfNodes];
+		for (int i = 0; i < size; i++) {
+			for (int n = nodes[i]; n >= 0 && ids[n] == 0; n = parents[n]) {
+				ids[n] = 1;
+			}
+		}
+		int kept = 0;
+		for (int n = 0; n < numOfNodes; n++) {
+			if (ids[n] != 0) {
+				items[kept] = items[n];
+				parents[kept] = parents[n] < 0 ? -1 : ids[parents[n]];
+				ids[n] = kept++;
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			if (nodes[i] >= 0) {
+				nodes[i] = ids[nodes[i]];
+			}
+		}
+		numOfNodes = kept;
+		liveNodes = kept;
+	}
+
+	/**
+	 * @return the indexes of the values of the subset ending at node
+	 */
+	private int[] subset(final int node) {
+		int size = 0;
+		for (int n = node; n >= 0; n = parents[n]) {
+			size++;
+		}
+		final int[] result = new int[size];
+		for (int n = node; n >= 0; n = parents[n]) {
+			result[--size] = items[n];
+		}
+		return result;
+	}
+
+}
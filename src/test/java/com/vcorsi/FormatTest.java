@@ -62,4 +62,23 @@ public class FormatTest {
 		
 	}
 
+	@Test
+	public void testParseCents() {
+		final Format p = new Format();
+		assertEquals(p.parseCents("74.06"), 7406L);
+		assertEquals(p.parseCents("0.09"), 9L);
+		assertEquals(p.parseCents("-1.50"), -150L);
+		assertEquals(p.parseCents("92233720368547758.07"), Long.MAX_VALUE);
+		final String[] invalid = { "", "1", "1.5", "1.500", "1,50", ".50",
+				"-.50", "1.5a", "a.50", "92233720368547758.08" };
+		for (String line : invalid) {
+			try {
+				p.parseCents(line);
+				fail(line);
+			} catch (IllegalArgumentException e) {
+				// ok
+			}
+		}
+	}
+
 }
@@ -1,12 +1,16 @@
 package com.vcorsi;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.nio.file.Files;
 import java.util.Scanner;
 
 import org.junit.Rule;
@@ -14,6 +18,7 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import com.vcorsi.Main;
+import com.vcorsi.myfinder.ApproximateResult;
 
 public class MainTest {
 
@@ -145,4 +150,154 @@ public class MainTest {
 		}
 	}
 
+	@Test
+	public void testBatch() throws IOException {
+		final File inputFile = temp.newFile();
+		try (PrintWriter pw = new PrintWriter(new FileWriter(inputFile))) {
+			pw.println("70.75");
+			pw.println("70.76");
+			pw.println("40.60");
+			pw.println();
+
+			pw.println("10.12");
+			pw.println("20.10");
+			pw.println("50.65");
+			pw.println("30.48");
+			pw.print("40.09");
+		}
+		final File outputFile = temp.newFile();
+		final Main main = new Main(inputFile.toPath(), outputFile.toPath());
+		assertEquals(main.executeBatch(false), 3);
+		try (Scanner scanner = new Scanner(outputFile.toPath())) {
+			assertEquals(scanner.nextLine(), "TRANSFER 70.75");
+			assertEquals(scanner.nextLine(), "20.10");
+			assertEquals(scanner.nextLine(), "50.65");
+			assertEquals(scanner.nextLine(), "");
+			assertEquals(scanner.nextLine(), "TRANSFER 70.76");
+			assertEquals(scanner.nextLine(), "NO SOLUTION");
+			assertEquals(scanner.nextLine(), "");
+			assertEquals(scanner.nextLine(), "TRANSFER 40.60");
+			assertEquals(scanner.nextLine(), "10.12");
+			assertEquals(scanner.nextLine(), "30.48");
+			assertFalse(scanner.hasNext());
+		}
+	}
+
+	@Test
+	public void testApproximate() throws IOException {
+		final File inputFile = temp.newFile();
+		try (PrintWriter pw = new PrintWriter(new FileWriter(inputFile))) {
+			pw.println("70.70");
+
+			pw.println("10.12");
+			pw.println("20.10");
+			pw.println("50.65");
+			pw.println("30.48");
+			pw.print("40.09");
+		}
+		final File outputFile = temp.newFile();
+		final Main main = new Main(inputFile.toPath(), outputFile.toPath());
+		final ApproximateResult result = main.executeApproximate(0.01);
+		// 30.48 + 40.09, the best sum not above the transfer
+		assertEquals(result.getSum(), new BigDecimal("70.57"));
+		try (Scanner scanner = new Scanner(outputFile.toPath())) {
+			assertEquals(scanner.nextLine(), "30.48");
+			assertEquals(scanner.nextLine(), "40.09");
+			assertFalse(scanner.hasNext());
+		}
+	}
+
+	@Test
+	public void testBinaryLedger() throws IOException {
+		final File inputFile = temp.newFile();
+		try (PrintWriter pw = new PrintWriter(new FileWriter(inputFile))) {
+			pw.println("70.75");
+			pw.println("40.60");
+			pw.println();
+
+			pw.println("10.12");
+			pw.println("20.10");
+			pw.println("50.65");
+			pw.println("30.48");
+			pw.print("40.09");
+		}
+		final File ledgerFile = temp.newFile();
+		final BinaryLedger ledger = new Main(inputFile.toPath(), null)
+				.convert(ledgerFile.toPath(), true);
+		assertEquals(ledgerFile.length(), BinaryLedger.HEADER_BYTES + 8 * 7);
+		assertEquals(ledger.min(), 1012);
+		assertEquals(ledger.max(), 5065);
+		assertEquals(ledger.sum(), 15144);
+		assertEquals(ledger.gcd(), 1);
+		final BinaryLedger read = BinaryLedger.read(ledgerFile.toPath());
+		assertArrayEquals(read.transfers(), new long[] { 7075, 4060 });
+		assertArrayEquals(read.payments(), new long[] { 1012, 2010, 5065,
+				3048, 4009 });
+		assertEquals(read.sum(), 15144);
+		// a header whose sum does not match the payments
+		final byte[] bytes = Files.readAllBytes(ledgerFile.toPath());
+		bytes[6 * 8]++;
+		final File corrupt = temp.newFile();
+		Files.write(corrupt.toPath(), bytes);
+		try {
+			BinaryLedger.read(corrupt.toPath());
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(e.getMessage(), "Invalid binary ledger");
+		}
+		final File outputFile = temp.newFile();
+		final Main main = new Main(ledgerFile.toPath(), outputFile.toPath());
+		assertEquals(main.executeBatch(false), 2);
+		try (Scanner scanner = new Scanner(outputFile.toPath())) {
+			assertEquals(scanner.nextLine(), "TRANSFER 70.75");
+			assertEquals(scanner.nextLine(), "20.10");
+			assertEquals(scanner.nextLine(), "50.65");
+			assertEquals(scanner.nextLine(), "");
+			assertEquals(scanner.nextLine(), "TRANSFER 40.60");
+			assertEquals(scanner.nextLine(), "10.12");
+			assertEquals(scanner.nextLine(), "30.48");
+			assertFalse(scanner.hasNext());
+		}
+		try {
+			main.execute();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals(e.getMessage(), "Many bank transfers found, use -batch.");
+		}
+	}
+
+	@Test
+	public void testParseSize() {
+		assertEquals(Main.parseSize("512"), 512);
+		assertEquals(Main.parseSize("2K"), 2048);
+		assertEquals(Main.parseSize("8g"), 8L << 30);
+		for (String invalid : new String[] { "", "g", "-1m", "x1", "9000000000g" }) {
+			try {
+				Main.parseSize(invalid);
+				fail();
+			} catch (IllegalArgumentException e) {
+				assertEquals(e.getMessage(), "Invalid size " + invalid);
+			}
+		}
+	}
+
+	@Test
+	public void testInvalidLine() throws IOException {
+		final File inputFile = temp.newFile();
+		try (PrintWriter pw = new PrintWriter(new FileWriter(inputFile))) {
+			pw.print("70.75\r\n");
+			pw.print("10.12\r\n");
+			pw.print("20.1\r\n");
+			pw.print("30.48\r\n");
+		}
+		final File outputFile = temp.newFile();
+		final Main main = new Main(inputFile.toPath(), outputFile.toPath());
+		try {
+			main.execute();
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(e.getMessage(), "Invalid line format at line 3");
+		}
+	}
+
 }
@@ -0,0 +1,173 @@
+package com.vcorsi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vcorsi.myfinder.FinderConfig;
+
+public class ServerTest {
+
+	private Server server;
+
+	@Before
+	public void start() throws IOException {
+		server = new Server(0, new FinderConfig(), 2, 4, 0);
+		server.start();
+	}
+
+	@After
+	public void stop() {
+		server.close();
+	}
+
+	@Test
+	public void testJson() throws IOException {
+		assertEquals(
+				"200 {\"status\": \"SOLVED\", \"payments\": [\"20.10\", \"50.65\"]}",
+				post("application/json",
+						"{\"transfer\": \"70.75\", \"payments\": [10.12, \"20.10\", 30.48, 40.09, 50.65]}"));
+		assertEquals("200 {\"status\": \"NO_SOLUTION\", \"payments\": []}",
+				post("application/json",
+						"{\"payments\": [\"10.12\", \"20.10\"], \"transfer\": \"10.13\"}"));
+		assertEquals("400 Error: Invalid line format",
+				post("application/json",
+						"{\"transfer\": \"70.7\", \"payments\": [\"10.12\"]}"));
+		assertEquals("400 Error: Invalid JSON at character 22",
+				post("application/json", "{\"transfer\": \"70.75\" \"payments\": []}"));
+	}
+
+	@Test
+	public void testLines() throws IOException {
+		assertEquals("200 10.12\n30.48",
+				post("text/plain", "40.60\n10.12\n20.10\n50.65\n30.48\n40.09\n"));
+		assertEquals("200 NO SOLUTION", post("text/plain", "70.76\r\n10.12\r\n20.10"));
+		assertEquals("400 Error: Invalid line format at line 3",
+				post("text/plain", "70.75\n10.12\n20.1\n"));
+		assertEquals("400 Error: Due payment amounts not found.",
+				post("text/plain", "70.75\n"));
+	}
+
+	@Test
+	public void testConcurrentRequests() throws Exception {
+		final Thread[] threads = new Thread[8];
+		final String[] responses = new String[threads.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int idx = i;
+			threads[i] = new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						// same due payments in another order
+						responses[idx] = post("text/plain", (idx % 2 == 0 ? "70.75"
+								: "40.60") + "\n50.65\n40.09\n30.48\n20.10\n10.12");
+					} catch (IOException e) {
+						responses[idx] = e.toString();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+			assertEquals(i % 2 == 0 ? "200 20.10\n50.65" : "200 10.12\n30.48",
+					responses[i]);
+		}
+	}
+
+	@Test
+	public void testSaturation() throws Exception {
+		// a worker and a queued request, each stopped after a second
+		final Server busy = new Server(0, new FinderConfig(), 1, 1, 1);
+		busy.start();
+		try {
+			final Thread[] threads = new Thread[2];
+			final String[] responses = new String[threads.length];
+			for (int i = 0; i < threads.length; i++) {
+				final int idx = i;
+				threads[i] = new Thread() {
+
+					@Override
+					public void run() {
+						try {
+							responses[idx] = post(busy, "text/plain",
+									hardInput(idx));
+						} catch (IOException e) {
+							responses[idx] = e.toString();
+						}
+					}
+				};
+				threads[i].start();
+				Thread.sleep(200);
+			}
+			assertEquals("503 Error: too many requests",
+					post(busy, "text/plain", hardInput(2)));
+			for (int i = 0; i < threads.length; i++) {
+				threads[i].join();
+				assertEquals("200 TIMEOUT", responses[i]);
+			}
+		} finally {
+			busy.close();
+		}
+	}
+
+	/**
+	 * @return a search taking far longer than a second, each seed giving
+	 *         other due payments: 60 multiples of 0.06 plus 0.02 and 0.03
+	 *         against a transfer of 0.01 modulo 0.06
+	 */
+	private static String hardInput(final int seed) {
+		final Random random = new Random(seed);
+		final StringBuilder sb = new StringBuilder("\n0.02\n0.03");
+		long total = 5;
+		for (int i = 0; i < 60; i++) {
+			final long cents = 6 * (1 + (random.nextLong() >>> 30));
+			sb.append(String.format("\n%d.%02d", cents / 100, cents % 100));
+			total += cents;
+		}
+		final long transfer = total / 3 / 6 * 6 + 1;
+		return String.format("%d.%02d", transfer / 100, transfer % 100) + sb;
+	}
+
+	private String post(final String contentType, final String body)
+			throws IOException {
+		return post(server, contentType, body);
+	}
+
+	private static String post(final Server server, final String contentType,
+			final String body) throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection) new URL(
+				"http://127.0.0.1:" + server.port() + Server.PATH)
+				.openConnection();
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type", contentType);
+		connection.setDoOutput(true);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(body.getBytes(StandardCharsets.UTF_8));
+		}
+		final int code = connection.getResponseCode();
+		final ByteArrayOutputStream response = new ByteArrayOutputStream();
+		try (InputStream in = code == 200 ? connection.getInputStream()
+				: connection.getErrorStream()) {
+			final byte[] buffer = new byte[8192];
+			for (int n; (n = in.read(buffer)) >= 0;) {
+				response.write(buffer, 0, n);
+			}
+		}
+		return code + " "
+				+ new String(response.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+}
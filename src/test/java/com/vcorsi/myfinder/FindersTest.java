@@ -1,26 +1,50 @@
 package com.vcorsi.myfinder;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
 
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * @author vladimiro
  * 
  */
 public class FindersTest {
+
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
 	
 	private static FinderSupplier dpSupplier;
 	private static FinderSupplier subsetSupplier;
+	private static FinderSupplier meetInMiddleSupplier;
+	private static FinderSupplier parallelSubsetSupplier;
+	private static FinderSupplier parallelDPSupplier;
+	private static FinderSupplier rollingDPSupplier;
 
 	@BeforeClass
 	public static void init() {
@@ -39,12 +63,50 @@ public class FindersTest {
 				return FinderFactory.subsetFinder(duePayments, sum);
 			}
 		};
+
+		meetInMiddleSupplier = new FinderSupplier() {
+
+			@Override
+			public Finder get(BigDecimal[] duePayments, BigDecimal sum) {
+				return FinderFactory.meetInMiddleFinder(duePayments, sum);
+			}
+		};
+
+		parallelSubsetSupplier = new FinderSupplier() {
+
+			@Override
+			public Finder get(BigDecimal[] duePayments, BigDecimal sum) {
+				return FinderFactory.subsetFinder(duePayments, sum,
+						new FinderConfig().setParallelism(4).setSplitDepth(2));
+			}
+		};
+
+		parallelDPSupplier = new FinderSupplier() {
+
+			@Override
+			public Finder get(BigDecimal[] duePayments, BigDecimal sum) {
+				return FinderFactory.dpFinder(duePayments, sum,
+						new FinderConfig().setParallelism(3));
+			}
+		};
+
+		rollingDPSupplier = new FinderSupplier() {
+
+			@Override
+			public Finder get(BigDecimal[] duePayments, BigDecimal sum) {
+				return FinderFactory.rollingDPFinder(duePayments, sum);
+			}
+		};
 	}
 
 	@Test
 	public void testTrivialSolution(){
 		doTestTrivialSolution(dpSupplier);
 		doTestTrivialSolution(subsetSupplier);
+		doTestTrivialSolution(meetInMiddleSupplier);
+		doTestTrivialSolution(parallelSubsetSupplier);
+		doTestTrivialSolution(parallelDPSupplier);
+		doTestTrivialSolution(rollingDPSupplier);
 	}
 	
 	private void doTestTrivialSolution(FinderSupplier supplier) {
@@ -67,6 +129,10 @@ public class FindersTest {
 	public void TestDecimalSolution(){
 		doTestDecimalSolution(dpSupplier);
 		doTestDecimalSolution(subsetSupplier);
+		doTestDecimalSolution(meetInMiddleSupplier);
+		doTestDecimalSolution(parallelSubsetSupplier);
+		doTestDecimalSolution(parallelDPSupplier);
+		doTestDecimalSolution(rollingDPSupplier);
 	}
 	
 	private void doTestDecimalSolution(FinderSupplier supplier) {
@@ -89,6 +155,10 @@ public class FindersTest {
 	public void testDecimalSolutionConsistingOfMoreValues(){
 		doTestDecimalSolutionConsistingOfMoreValues(dpSupplier);
 		doTestDecimalSolutionConsistingOfMoreValues(subsetSupplier);
+		doTestDecimalSolutionConsistingOfMoreValues(meetInMiddleSupplier);
+		doTestDecimalSolutionConsistingOfMoreValues(parallelSubsetSupplier);
+		doTestDecimalSolutionConsistingOfMoreValues(parallelDPSupplier);
+		doTestDecimalSolutionConsistingOfMoreValues(rollingDPSupplier);
 	}
 	
 	private void doTestDecimalSolutionConsistingOfMoreValues(FinderSupplier supplier) {
@@ -112,6 +182,10 @@ public class FindersTest {
 	public void TestWithNoInputValues(){
 		doTestWithNoInputValues(dpSupplier);
 		doTestWithNoInputValues(subsetSupplier);
+		doTestWithNoInputValues(meetInMiddleSupplier);
+		doTestWithNoInputValues(parallelSubsetSupplier);
+		doTestWithNoInputValues(parallelDPSupplier);
+		doTestWithNoInputValues(rollingDPSupplier);
 	}
 	
 	private void doTestWithNoInputValues(FinderSupplier supplier) {
@@ -129,6 +203,10 @@ public class FindersTest {
 	public void testWithNegativeInputValues(){
 		doTestWithNegativeInputValues(dpSupplier);
 		doTestWithNegativeInputValues(subsetSupplier);
+		doTestWithNegativeInputValues(meetInMiddleSupplier);
+		doTestWithNegativeInputValues(parallelSubsetSupplier);
+		doTestWithNegativeInputValues(parallelDPSupplier);
+		doTestWithNegativeInputValues(rollingDPSupplier);
 	}
 	private void doTestWithNegativeInputValues(FinderSupplier supplier) {
 		final BigDecimal[] values = new BigDecimal[] {
@@ -150,6 +228,10 @@ public class FindersTest {
 	public void testdoTestZeroSum(){
 		doTestZeroSum(dpSupplier);
 		doTestZeroSum(subsetSupplier);
+		doTestZeroSum(meetInMiddleSupplier);
+		doTestZeroSum(parallelSubsetSupplier);
+		doTestZeroSum(parallelDPSupplier);
+		doTestZeroSum(rollingDPSupplier);
 	}
 	
 	private void doTestZeroSum(FinderSupplier supplier) {
@@ -161,4 +243,795 @@ public class FindersTest {
 		assertTrue(l.contains(BigDecimal.ZERO));
 	}
 
+	@Test
+	public void testDPWithManyValuesAndLargeSum() {
+		// 2000 payments up to 2500.00 and a transfer of 50000.00: 5M columns
+		final Random random = new Random(42);
+		final BigDecimal[] values = new BigDecimal[2000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = BigDecimal.valueOf(1 + random.nextInt(250000), 2);
+		}
+		BigDecimal sum = BigDecimal.ZERO;
+		for (int i = 0; i < values.length && sum.compareTo(BigDecimal.valueOf(50000)) < 0; i += 3) {
+			sum = sum.add(values[i]);
+		}
+		for (FinderSupplier supplier : Arrays.asList(dpSupplier, parallelDPSupplier,
+				rollingDPSupplier)) {
+			final Finder finder = supplier.get(values, sum);
+			final BigDecimal[] solution = finder.find();
+			assertTrue(solution.length > 0);
+			BigDecimal solutionSum = BigDecimal.ZERO;
+			for (BigDecimal d : solution) {
+				solutionSum = solutionSum.add(d);
+			}
+			assertEquals(solutionSum.compareTo(sum), 0);
+		}
+	}
+
+	@Test
+	public void testMeetInMiddleWithManyValuesAndLargeSum() {
+		// 40 payments and a transfer in the millions of cents
+		final Random random = new Random(7);
+		final BigDecimal[] values = new BigDecimal[40];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = BigDecimal.valueOf(1 + random.nextInt(100000000), 2);
+		}
+		BigDecimal sum = BigDecimal.ZERO;
+		for (int i = 0; i < values.length; i += 3) {
+			sum = sum.add(values[i]);
+		}
+		final BigDecimal[] solution = meetInMiddleSupplier.get(values, sum).find();
+		BigDecimal solutionSum = BigDecimal.ZERO;
+		for (BigDecimal d : solution) {
+			solutionSum = solutionSum.add(d);
+		}
+		assertEquals(solutionSum.compareTo(sum), 0);
+		assertTrue(FinderFactory.finder(values, sum) instanceof MeetInMiddleFinder);
+		// the subset sums of halves of 30 values cannot be held
+		final BigDecimal[] tooMany = new BigDecimal[MeetInMiddleFinder.MAX_VALUES + 1];
+		Arrays.fill(tooMany, BigDecimal.ONE);
+		try {
+			meetInMiddleSupplier.get(tooMany, sum);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(e.getMessage(), "Too many values");
+		}
+	}
+
+	@Test
+	public void testParallelSubsetWithManyValues() {
+		final Random random = new Random(11);
+		final BigDecimal[] values = new BigDecimal[26];
+		BigDecimal sum = BigDecimal.ZERO;
+		for (int i = 0; i < values.length; i++) {
+			// even amounts only: an odd sum has no solution
+			values[i] = BigDecimal.valueOf(2 * (1 + random.nextInt(50000)), 2);
+			if (i % 4 == 0) {
+				sum = sum.add(values[i]);
+			}
+		}
+		final FinderConfig config = new FinderConfig().setParallelism(4);
+		final BigDecimal[] solution = FinderFactory.subsetFinder(values, sum,
+				config).find();
+		BigDecimal solutionSum = BigDecimal.ZERO;
+		for (BigDecimal d : solution) {
+			solutionSum = solutionSum.add(d);
+		}
+		assertEquals(solutionSum.compareTo(sum), 0);
+		final BigDecimal odd = sum.add(BigDecimal.valueOf(1, 2));
+		assertEquals(FinderFactory.subsetFinder(values, odd, config).find().length, 0);
+	}
+
+	@Test
+	public void testSubsetWithTensOfThousandsOfValues() {
+		// most values are too big and skipped one after the other, the others
+		// are all needed: the search goes as deep as the number of values
+		final BigDecimal[] values = new BigDecimal[30000];
+		BigDecimal sum = BigDecimal.ZERO;
+		for (int i = 0; i < values.length; i++) {
+			if (i % 3 == 0) {
+				values[i] = BigDecimal.valueOf(1, 2);
+				sum = sum.add(values[i]);
+			} else {
+				values[i] = BigDecimal.valueOf(100000 + i, 2);
+			}
+		}
+		for (FinderSupplier supplier : new FinderSupplier[] { subsetSupplier,
+				parallelSubsetSupplier }) {
+			final BigDecimal[] solution = supplier.get(values, sum).find();
+			assertEquals(10000, solution.length);
+			BigDecimal solutionSum = BigDecimal.ZERO;
+			for (BigDecimal d : solution) {
+				solutionSum = solutionSum.add(d);
+			}
+			assertEquals(solutionSum.compareTo(sum), 0);
+			assertEquals(0, supplier.get(values, sum.add(BigDecimal.ONE)).find().length);
+		}
+	}
+
+	@Test
+	public void testDisjointAllocation() {
+		final BigDecimal[] values = new BigDecimal[] { BigDecimal.valueOf(10),
+				BigDecimal.valueOf(20), BigDecimal.valueOf(30),
+				BigDecimal.valueOf(40), BigDecimal.valueOf(50) };
+		// 50 alone would leave 10 + 20 + 30 + 40 = 100 for the other transfer
+		final BigDecimal[][] allocation = FinderFactory.allocationFinder(
+				values,
+				new BigDecimal[] { BigDecimal.valueOf(50),
+						BigDecimal.valueOf(90) }).find();
+		assertEquals(allocation.length, 2);
+		final List<BigDecimal> all = new ArrayList<>();
+		for (int i = 0; i < allocation.length; i++) {
+			BigDecimal solutionSum = BigDecimal.ZERO;
+			for (BigDecimal d : allocation[i]) {
+				solutionSum = solutionSum.add(d);
+				assertFalse(all.contains(d));
+				all.add(d);
+			}
+			assertEquals(solutionSum.compareTo(BigDecimal.valueOf(i == 0 ? 50 : 90)), 0);
+		}
+		final BigDecimal[][] none = FinderFactory.allocationFinder(
+				values,
+				new BigDecimal[] { BigDecimal.valueOf(30),
+						BigDecimal.valueOf(30), BigDecimal.valueOf(30) }).find();
+		assertEquals(none.length, 0);
+	}
+
+	@Test
+	public void testDisjointAllocationAfterManySubsets() {
+		// 1.10 is settled first: the 3003 ways of taking ten of the fifteen
+		// 0.01 come before 1.00 + 0.10, and all of them leave too little
+		// for 0.06
+		final BigDecimal[] values = new BigDecimal[17];
+		Arrays.fill(values, BigDecimal.valueOf(1, 2));
+		values[15] = BigDecimal.valueOf(10, 2);
+		values[16] = BigDecimal.valueOf(100, 2);
+		final BigDecimal[] transfers = new BigDecimal[] {
+				BigDecimal.valueOf(110, 2), BigDecimal.valueOf(6, 2) };
+		final BigDecimal[][] allocation = FinderFactory.allocationFinder(
+				values, transfers).find();
+		assertEquals(allocation.length, 2);
+		assertEquals(allocation[0].length, 2);
+		assertEquals(allocation[1].length, 6);
+		final AllocationResult cancelled = FinderFactory.allocationFinder(
+				values, transfers).find(CancellationToken.withTimeout(0,
+				TimeUnit.MILLISECONDS), new Progress());
+		assertEquals(cancelled.getStatus(), FindResult.Status.TIMEOUT);
+		assertEquals(cancelled.getSolutions().length, 0);
+	}
+
+	@Test
+	public void testDisjointAllocationOfManyPayments() {
+		// 3000 payments up to 1000.00 and 30 transfers, each the sum of ten
+		// of them
+		final Random random = new Random(13);
+		final long[] values = new long[3000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = 1 + random.nextInt(100000);
+		}
+		final long[] transfers = new long[30];
+		for (int i = 0; i < transfers.length; i++) {
+			for (int j = 0; j < 10; j++) {
+				transfers[i] += values[10 * i + j];
+			}
+		}
+		assertDisjointAllocation(values, transfers, new FinderConfig());
+		// without the heap for a table the subsets are searched
+		final long[] few = Arrays.copyOf(values, 40);
+		final long[] two = new long[] { transfers[0], transfers[1] };
+		assertDisjointAllocation(few, two, new FinderConfig().setHeapBudget(1024));
+	}
+
+	private static void assertDisjointAllocation(final long[] values,
+			final long[] transfers, final FinderConfig config) {
+		final AllocationResult result = FinderFactory.allocationFinder(values,
+				transfers, config).find(new CancellationToken(), new Progress());
+		assertEquals(result.getStatus(), FindResult.Status.SOLVED);
+		final BigDecimal[][] allocation = result.getSolutions();
+		assertEquals(allocation.length, transfers.length);
+		final List<BigDecimal> free = new ArrayList<>();
+		for (long v : values) {
+			free.add(BigDecimal.valueOf(v, 2));
+		}
+		for (int i = 0; i < allocation.length; i++) {
+			BigDecimal solutionSum = BigDecimal.ZERO;
+			for (BigDecimal d : allocation[i]) {
+				solutionSum = solutionSum.add(d);
+				assertTrue(free.remove(d));
+			}
+			assertEquals(solutionSum.compareTo(BigDecimal.valueOf(transfers[i], 2)), 0);
+		}
+	}
+
+	@Test
+	public void testFactoryRespectsHeapBudget() {
+		final Random random = new Random(5);
+		final long[] values = new long[30];
+		long sum = 0;
+		for (int i = 0; i < values.length; i++) {
+			values[i] = 1 + random.nextInt(100000000);
+			if (i % 2 == 0) {
+				sum += values[i];
+			}
+		}
+		assertTrue(FinderFactory.finder(values, sum) instanceof MeetInMiddleFinder);
+		// neither the DP matrix nor the subset sums fit in 1KB
+		final FinderConfig config = new FinderConfig().setHeapBudget(1024);
+		assertTrue(FinderFactory.finder(values, sum, config) instanceof SubsetFinder);
+		// with small amounts the DP matrix is the fastest
+		final long[] small = new long[2000];
+		for (int i = 0; i < small.length; i++) {
+			small[i] = 1 + random.nextInt(1000);
+		}
+		// equal amounts are grouped before choosing
+		final CancellableFinder finder = FinderFactory.finder(small, 50000,
+				new FinderConfig().setCalibrate(true));
+		assertTrue(((ReducedFinder) finder).finder() instanceof DPFinder);
+	}
+
+	@Test
+	public void testTimeoutAndCancellation() {
+		// multiples of 1.28 cannot reach a sum which is not, though all the
+		// remainders modulo 0.64 are reachable
+		final Random random = new Random(11);
+		final BigDecimal[] values = new BigDecimal[40];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = BigDecimal.valueOf(128 * (1 + random.nextInt(400000)),
+					2);
+		}
+		final BigDecimal sum = BigDecimal.valueOf(128 * 200000L * 20 + 64, 2);
+		final Progress progress = new Progress();
+		final FindResult timeout = ((CancellableFinder) FinderFactory
+				.subsetFinder(values, sum)).find(
+				CancellationToken.withTimeout(50, TimeUnit.MILLISECONDS),
+				progress);
+		assertEquals(timeout.getStatus(), FindResult.Status.TIMEOUT);
+		assertEquals(timeout.getSolution().length, 0);
+		assertTrue(progress.getNodesExplored() > 0);
+		assertEquals(((CancellableFinder) FinderFactory.meetInMiddleFinder(
+				values, sum)).find(
+				CancellationToken.withTimeout(0, TimeUnit.MILLISECONDS),
+				new Progress()).getStatus(), FindResult.Status.TIMEOUT);
+		final CancellationToken cancelled = new CancellationToken();
+		cancelled.cancel();
+		// a sum not rejected by the gcd of the values
+		final BigDecimal evenSum = sum.add(BigDecimal.valueOf(64, 2));
+		assertEquals(((CancellableFinder) FinderFactory.dpFinder(values,
+				evenSum)).find(cancelled, new Progress()).getStatus(),
+				FindResult.Status.CANCELLED);
+		// a search ending in time reports its outcome
+		final FindResult solved = FinderFactory.finder(
+				new BigDecimal[] { BigDecimal.valueOf(3), BigDecimal.valueOf(5),
+						BigDecimal.valueOf(7) }, BigDecimal.valueOf(12)).find(
+				new CancellationToken(), new Progress());
+		assertEquals(solved.getStatus(), FindResult.Status.SOLVED);
+		assertEquals(solved.getSolution().length, 2);
+	}
+
+	@Test(timeout = 60000)
+	public void testParallelBuildStopsOnFailure() {
+		final long[] values = new long[200];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = 1000 + i;
+		}
+		// the workers stop, whichever of them meets the failure
+		for (int k = 0; k < 50; k++) {
+			final CancellationToken token = CancellationToken.withTimeout(k % 5,
+					TimeUnit.MILLISECONDS);
+			final BitsetTable table = new BitsetTable(values, 100000L * 64,
+					new SearchMonitor(token, new Progress()));
+			try {
+				table.buildAll(4);
+			} catch (CancelledException e) {
+				// expected, unless the build ended first
+			}
+		}
+	}
+
+	@Test
+	public void testEnumerateAllSolutions() {
+		// small amounts with duplicates and zeros, so that sums are ambiguous
+		final Random random = new Random(3);
+		final long[] values = new long[16];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextInt(8) == 0 ? 0 : 1 + random.nextInt(20);
+		}
+		for (long sum : new long[] { 0, 1, 37, 60, Cents.sum(values),
+				Cents.sum(values) + 1 }) {
+			// brute force over the subsets, as sorted lists of indexes
+			final Set<List<Integer>> expected = new HashSet<>();
+			for (int mask = 1; mask < 1 << values.length; mask++) {
+				long s = 0;
+				final List<Integer> subset = new ArrayList<>();
+				for (int i = 0; i < values.length; i++) {
+					if ((mask & 1 << i) != 0) {
+						s += values[i];
+						subset.add(i);
+					}
+				}
+				if (s == sum) {
+					expected.add(subset);
+				}
+			}
+			final Amounts amounts = Amounts.of(values);
+			for (AbstractEnumerator enumerator : new AbstractEnumerator[] {
+					new DPEnumerator(amounts, sum, new FinderConfig()),
+					new SearchEnumerator(amounts, sum) }) {
+				assertEquals(enumerator.count(), expected.size());
+				final Set<List<Integer>> found = new HashSet<>();
+				if (sum <= amounts.total()) {
+					final Iterator<int[]> subsets = enumerator.subsets();
+					while (subsets.hasNext()) {
+						final int[] idxes = subsets.next();
+						Arrays.sort(idxes);
+						final List<Integer> subset = new ArrayList<>();
+						for (int idx : idxes) {
+							subset.add(idx);
+						}
+						if (!subset.isEmpty()) {
+							assertTrue(found.add(subset));
+						}
+					}
+				}
+				assertEquals(found, expected);
+				assertEquals(enumerator.solutions(3).size(),
+						Math.min(3, expected.size()));
+			}
+		}
+	}
+
+	@Test
+	public void testGcdScaling() {
+		// whole euros and a transfer with cents: rejected without a matrix
+		final BigDecimal[] euros = new BigDecimal[] { new BigDecimal("10.00"),
+				new BigDecimal("25.00"), new BigDecimal("40.00"),
+				new BigDecimal("5.00") };
+		for (FinderSupplier supplier : Arrays.asList(dpSupplier,
+				rollingDPSupplier)) {
+			assertEquals(supplier.get(euros, new BigDecimal("45.50")).find().length, 0);
+			final BigDecimal[] solution = supplier.get(euros,
+					new BigDecimal("45.00")).find();
+			BigDecimal solutionSum = BigDecimal.ZERO;
+			for (BigDecimal d : solution) {
+				solutionSum = solutionSum.add(d);
+			}
+			assertEquals(solutionSum.compareTo(new BigDecimal("45.00")), 0);
+		}
+		final BatchFinder batch = FinderFactory.batchFinder(new long[] { 1000,
+				2500, 4000, 500 }, 7000, new FinderConfig());
+		assertEquals(batch.find(4550).length, 0);
+		assertEquals(batch.find(6500).length, 2);
+		assertEquals(FinderFactory.enumerator(euros, new BigDecimal("40.00"))
+				.count(), 2);
+		// the table fits in 1MB, the 8MB of the counts do not
+		final long[] values = new long[] { 300001, 400003, 299996, 700001 };
+		assertTrue(FinderFactory.enumerator(values, 1000000,
+				new FinderConfig()) instanceof DPEnumerator);
+		final SolutionEnumerator search = FinderFactory.enumerator(values,
+				1000000, new FinderConfig().setHeapBudget(1 << 20));
+		assertTrue(search instanceof SearchEnumerator);
+		assertEquals(search.count(), 1);
+	}
+
+	@Test
+	public void testSparseDP() {
+		// few large payments: a handful of reachable sums in a wide range
+		final Random random = new Random(13);
+		final long[] values = new long[24];
+		long sum = 0;
+		for (int i = 0; i < values.length; i++) {
+			values[i] = 1 + random.nextInt(1000000000);
+			if (i % 2 == 1) {
+				sum += values[i];
+			}
+		}
+		final FinderConfig config = new FinderConfig().setSparse(true);
+		final DPFinder finder = new DPFinder(Amounts.of(values), sum, config);
+		final BigDecimal[] solution = finder.find();
+		long solutionSum = 0;
+		for (BigDecimal d : solution) {
+			solutionSum += Cents.of(d);
+		}
+		assertEquals(solutionSum, sum);
+		assertEquals(new DPFinder(Amounts.of(values), sum + 1, config).find().length
+				+ new DPFinder(Amounts.of(new long[] { 3, 5, 9 }), 13, config)
+						.find().length, 0);
+	}
+
+	@Test
+	public void testReduction() {
+		// repeated amounts, some larger than the transfers
+		final Random random = new Random(17);
+		for (int run = 0; run < 20; run++) {
+			final long[] values = new long[12];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = 5 * random.nextInt(6);
+			}
+			final long total = Cents.sum(values);
+			for (long sum = 1; sum <= total + 1; sum++) {
+				boolean reachable = false;
+				for (int mask = 1; mask < 1 << values.length && !reachable; mask++) {
+					long s = 0;
+					for (int i = 0; i < values.length; i++) {
+						if ((mask & 1 << i) != 0) {
+							s += values[i];
+						}
+					}
+					reachable = s == sum;
+				}
+				final BigDecimal[] solution = FinderFactory.finder(values, sum)
+						.find();
+				assertEquals(solution.length > 0, reachable);
+				// the solution uses each payment at most once
+				final List<Long> left = new ArrayList<>();
+				for (long v : values) {
+					left.add(v);
+				}
+				long solutionSum = 0;
+				for (BigDecimal d : solution) {
+					assertTrue(left.remove(Long.valueOf(Cents.of(d))));
+					solutionSum += Cents.of(d);
+				}
+				assertTrue(!reachable || solutionSum == sum);
+			}
+		}
+		// 7.00 can only be reached with the 4.00 and the 3.00: both forced
+		final Reduction reduction = new Reduction(Amounts.of(new long[] { 100,
+				100, 400, 300, 900 }), 700);
+		assertEquals(reduction.sum(), 0);
+		assertEquals(reduction.expand(new int[0]).length, 2);
+	}
+
+	@Test
+	public void testDPCache() throws Exception {
+		final Random random = new Random(23);
+		final long[] values = new long[300];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = 1 + random.nextInt(100000);
+		}
+		final long sum = 3000001;
+		final FinderConfig config = new FinderConfig()
+				.setCacheDirectory(temp.getRoot().toPath());
+		final Progress cold = new Progress();
+		final FindResult first = new DPFinder(Amounts.of(values), sum, config)
+				.find(new CancellationToken(), cold);
+		assertEquals(temp.getRoot().list().length, 1);
+		// a new payment larger than all the others only adds a row
+		final long[] more = Arrays.copyOf(values, values.length + 1);
+		more[values.length] = 200000;
+		final Progress warm = new Progress();
+		final FindResult second = new DPFinder(Amounts.of(more), sum, config)
+				.find(new CancellationToken(), warm);
+		assertEquals(first.getStatus(), second.getStatus());
+		assertTrue(warm.getRowsDone() <= 1);
+		assertTrue(cold.getRowsDone() > 100);
+		long solutionSum = 0;
+		for (BigDecimal d : second.getSolution()) {
+			solutionSum += Cents.of(d);
+		}
+		assertTrue(second.getSolution().length == 0 || solutionSum == sum);
+		// a corrupt file is ignored
+		for (File f : temp.getRoot().listFiles()) {
+			Files.write(f.toPath(), new byte[] { 1, 2, 3 });
+		}
+		assertEquals(new DPFinder(Amounts.of(more), sum, config).find()
+				.length, second.getSolution().length);
+
+		// rows built later are appended to the file of the same values
+		final File directory = temp.newFolder();
+		final DPCache cache = new DPCache(directory.toPath());
+		final long[] few = Arrays.copyOf(values, 40);
+		final BitsetTable partial = cache.load(few, 1, 100000,
+				SearchMonitor.unbounded());
+		partial.build(few[0] + few[1], 1);
+		cache.save(partial, 1);
+		final BitsetTable full = cache.load(few, 1, 100000,
+				SearchMonitor.unbounded());
+		assertEquals(full.builtRows(), partial.builtRows());
+		final File file = directory.listFiles()[0];
+		final Object fileKey = Files.readAttributes(file.toPath(),
+				BasicFileAttributes.class).fileKey();
+		full.buildAll(1);
+		cache.save(full, 1);
+		assertEquals(directory.list().length, 1);
+		// the same file, not a new one moved over it
+		assertEquals(Files.readAttributes(file.toPath(),
+				BasicFileAttributes.class).fileKey(), fileKey);
+		final BitsetTable fresh = new BitsetTable(few, 100000);
+		fresh.buildAll(1);
+		final BitsetTable cached = cache.load(few, 1, 100000,
+				SearchMonitor.unbounded());
+		assertEquals(cached.builtRows(), few.length + 1);
+		for (int i = 0; i <= few.length; i++) {
+			assertArrayEquals(fresh.row(i), cached.row(i));
+		}
+		// a file sharing no value is neither loaded nor touched
+		final FileTime old = FileTime.fromMillis(0);
+		Files.setLastModifiedTime(file.toPath(), old);
+		final long[] other = Arrays.copyOf(few, few.length);
+		other[0]++;
+		assertEquals(cache.load(other, 1, 100000, SearchMonitor.unbounded())
+				.builtRows(), 1);
+		assertEquals(Files.getLastModifiedTime(file.toPath()), old);
+		// a header claiming more values than the file holds is ignored
+		for (File f : directory.listFiles()) {
+			final ByteBuffer header = ByteBuffer.allocate(32);
+			header.putInt(DPCache.MAGIC).putInt(DPCache.VERSION).putLong(1)
+					.putLong(100000).putInt(Integer.MAX_VALUE)
+					.putInt(Integer.MAX_VALUE);
+			Files.write(f.toPath(), header.array());
+		}
+		assertEquals(cache.load(few, 1, 100000, SearchMonitor.unbounded())
+				.builtRows(), 1);
+	}
+
+	@Test
+	public void testOffHeapDP() throws Exception {
+		final File directory = temp.newFolder();
+		final FinderConfig config = new FinderConfig()
+				.setOffHeapDirectory(directory.toPath());
+		final Random random = new Random(13);
+		for (int k = 0; k < 20; k++) {
+			final long[] values = new long[20 + random.nextInt(20)];
+			long sum = 0;
+			for (int i = 0; i < values.length; i++) {
+				values[i] = 1 + random.nextInt(5000);
+				if (random.nextInt(3) == 0) {
+					sum += values[i];
+				}
+			}
+			// every other sum is most likely unreachable
+			sum += k % 2;
+			final Amounts amounts = Amounts.of(values);
+			final int[] expected = new DPFinder(amounts, sum,
+					new FinderConfig()).findIdx(SearchMonitor.unbounded());
+			final int[] idxes = new DPFinder(amounts, sum, config)
+					.findIdx(SearchMonitor.unbounded());
+			assertEquals(expected.length == 0, idxes.length == 0);
+			long solutionSum = 0;
+			for (int idx : idxes) {
+				solutionSum += values[idx];
+			}
+			assertEquals(idxes.length == 0 ? 0 : sum, solutionSum);
+		}
+		// the file of the rows is deleted once the search is over
+		assertEquals(0, directory.list().length);
+		// the same rows as the heap table
+		final long[] values = new long[] { 3, 5, 7, 11, 13 };
+		final long capacity = 39;
+		final BitsetTable heap = new BitsetTable(values, capacity);
+		heap.buildAll(1);
+		try (OffHeapTable table = new OffHeapTable(values, capacity,
+				directory.toPath(), SearchMonitor.unbounded())) {
+			for (long s = 0; s <= capacity; s++) {
+				assertEquals(heap.firstRow(s), table.build(s));
+			}
+			assertArrayEquals(heap.reconstruct(5, 39), table.reconstruct(5, 39));
+		}
+		// only the row being built counts against the heap
+		final Amounts large = Amounts.of(new long[] { 1000000001L,
+				2000000003L, 3000000007L, 4000000009L });
+		assertTrue(new StrategySelector(config.setHeapBudget(1L << 30)).fits(
+				StrategySelector.Strategy.DP, large, 6000000010L));
+		assertFalse(new StrategySelector(new FinderConfig()
+				.setHeapBudget(1L << 30)).fits(StrategySelector.Strategy.DP,
+				large, 6000000010L));
+	}
+
+	@Test
+	public void testReconciliationEngine() {
+		final Random random = new Random(29);
+		final ReconciliationEngine engine = new ReconciliationEngine(5000,
+				new FinderConfig());
+		final List<Long> payments = new ArrayList<>();
+		for (int step = 0; step < 300; step++) {
+			if (payments.isEmpty() || random.nextInt(3) > 0) {
+				final long payment = random.nextInt(400);
+				engine.addPayment(payment);
+				payments.add(payment);
+			} else {
+				final Long payment = payments.remove(random.nextInt(payments
+						.size()));
+				assertTrue(engine.removePayment(payment));
+			}
+			assertEquals(engine.size(), payments.size());
+			final long transfer = 1 + random.nextInt(5000);
+			final BigDecimal[] solution = engine.query(transfer);
+			final long[] cents = new long[payments.size()];
+			for (int i = 0; i < cents.length; i++) {
+				cents[i] = payments.get(i);
+			}
+			final boolean reachable = transfer <= Cents.sum(cents)
+					&& FinderFactory.dpFinder(toBigDecimal(cents),
+							Cents.toBigDecimal(transfer)).find().length > 0;
+			assertEquals(solution.length > 0, reachable);
+			final List<Long> left = new ArrayList<>(payments);
+			long solutionSum = 0;
+			for (BigDecimal d : solution) {
+				assertTrue(left.remove(Long.valueOf(Cents.of(d))));
+				solutionSum += Cents.of(d);
+			}
+			assertTrue(!reachable || solutionSum == transfer);
+		}
+		assertTrue(!engine.removePayment(1000000));
+
+		// the table does not fit in 1KB: queries are solved by a finder
+		final ReconciliationEngine small = new ReconciliationEngine(100000,
+				new FinderConfig().setHeapBudget(1024));
+		for (long payment : new long[] { 30001, 40003, 29996, 70001 }) {
+			small.addPayment(payment);
+		}
+		assertEquals(small.query(100000).length, 3);
+		assertEquals(small.query(99999).length, 0);
+		assertTrue(small.removePayment(40003));
+		assertEquals(small.query(100000).length, 0);
+		assertEquals(small.query(59997).length, 2);
+	}
+
+	@Test
+	public void testTolerance() {
+		final BigDecimal[] values = toBigDecimal(new long[] { 1012, 2010, 3048,
+				4009, 5065 });
+		assertEquals(FinderFactory.dpFinder(values, new BigDecimal("70.70"))
+				.find().length, 0);
+		final BigDecimal[] solution = FinderFactory.toleranceFinder(values,
+				new BigDecimal("70.70"), new BigDecimal("0.05")).find();
+		Arrays.sort(solution);
+		assertArrayEquals(solution, toBigDecimal(new long[] { 2010, 5065 }));
+		assertEquals(FinderFactory.toleranceFinder(values,
+				new BigDecimal("70.70"), new BigDecimal("0.04")).find().length, 0);
+		// equally close: the larger sum
+		assertArrayEquals(FinderFactory.toleranceFinder(
+				toBigDecimal(new long[] { 100, 104 }), new BigDecimal("1.02"),
+				new BigDecimal("0.02")).find(), toBigDecimal(new long[] { 104 }));
+		// 4 rows of up to 1000000 bits do not fit in 64KB
+		try {
+			FinderFactory.toleranceFinder(new long[] { 300001, 400003, 299996,
+					700001 }, 1000000, 5,
+					new FinderConfig().setHeapBudget(1 << 16));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(e.getMessage(),
+					"Transfer plus tolerance too large for the heap");
+		}
+
+		// the closest sum, compared with all the subsets
+		final Random random = new Random(31);
+		for (int round = 0; round < 20; round++) {
+			final long[] cents = new long[12];
+			for (int i = 0; i < cents.length; i++) {
+				cents[i] = 5 * (1 + random.nextInt(2000));
+			}
+			final long transfer = random.nextInt(40000);
+			final long tolerance = random.nextInt(30);
+			long closest = Long.MAX_VALUE;
+			for (int mask = 1; mask < 1 << cents.length; mask++) {
+				long subsetSum = 0;
+				for (int i = 0; i < cents.length; i++) {
+					if ((mask & 1 << i) != 0) {
+						subsetSum += cents[i];
+					}
+				}
+				closest = Math.min(closest, Math.abs(subsetSum - transfer));
+			}
+			long solutionSum = 0;
+			for (BigDecimal d : FinderFactory.toleranceFinder(cents, transfer,
+					tolerance, new FinderConfig()).find()) {
+				solutionSum += Cents.of(d);
+			}
+			if (closest <= tolerance) {
+				assertEquals(Math.abs(solutionSum - transfer), closest);
+			} else {
+				assertEquals(solutionSum, 0);
+			}
+		}
+	}
+
+	@Test
+	public void testApproximation() {
+		final Random random = new Random(37);
+		for (int round = 0; round < 20; round++) {
+			final long[] cents = new long[14];
+			for (int i = 0; i < cents.length; i++) {
+				cents[i] = 1 + random.nextInt(100000);
+			}
+			final long transfer = random.nextInt(700000);
+			long best = 0;
+			for (int mask = 1; mask < 1 << cents.length; mask++) {
+				long subsetSum = 0;
+				for (int i = 0; i < cents.length; i++) {
+					if ((mask & 1 << i) != 0) {
+						subsetSum += cents[i];
+					}
+				}
+				if (subsetSum <= transfer) {
+					best = Math.max(best, subsetSum);
+				}
+			}
+			final ApproximateResult result = FinderFactory.approximateFinder(
+					cents, transfer, 0.05).findApproximate();
+			final long sum = Cents.of(result.getSum());
+			long solutionSum = 0;
+			for (BigDecimal d : result.getSolution()) {
+				solutionSum += Cents.of(d);
+			}
+			assertEquals(solutionSum, sum);
+			assertTrue(sum <= best
+					&& sum >= Math.min(best / 1.05, transfer * 0.95));
+			assertTrue(best - sum <= Cents.of(result.getErrorBound()));
+		}
+
+		// a transfer no matrix can hold
+		final long[] cents = new long[300];
+		long total = 0;
+		for (int i = 0; i < cents.length; i++) {
+			cents[i] = 1 + (random.nextLong() >>> 24);
+			total += cents[i];
+		}
+		final ApproximateResult result = FinderFactory.approximateFinder(
+				cents, total / 3, 0.01).findApproximate();
+		final long sum = Cents.of(result.getSum());
+		assertTrue(sum <= total / 3 && sum >= total / 3 * 0.99);
+		// stopped by the token
+		final ApproximateFinder finder = FinderFactory.approximateFinder(
+				cents, total / 3, 0.01);
+		final ApproximateResult expired = finder.findApproximate(
+				CancellationToken.withTimeout(0, TimeUnit.MILLISECONDS));
+		assertEquals(expired.getStatus(), FindResult.Status.TIMEOUT);
+		assertEquals(expired.getSolution().length, 0);
+		final CancellationToken token = new CancellationToken();
+		token.cancel();
+		assertEquals(finder.findApproximate(token).getStatus(),
+				FindResult.Status.CANCELLED);
+		assertEquals(finder.findApproximate().getSum(), result.getSum());
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		final Metrics metrics = Metrics.get();
+		metrics.reset();
+		final BigDecimal[] values = toBigDecimal(new long[] { 1012, 2010, 3048,
+				4009, 5065 });
+		// off: nothing is counted
+		FinderFactory.dpFinder(values, new BigDecimal("70.75")).find();
+		assertEquals(metrics.getRowsBuilt(), 0);
+		Metrics.setEnabled(true);
+		try {
+			FinderFactory.dpFinder(values, new BigDecimal("70.75")).find();
+			assertTrue(metrics.getRowsBuilt() > 0);
+			assertTrue(metrics.getDpCells() >= 64 * metrics.getRowsBuilt());
+			assertTrue(metrics.getPeakMatrixBytes() > 0);
+			FinderFactory.subsetFinder(values, new BigDecimal("70.76")).find();
+			assertTrue(metrics.getNodesVisited() > 0);
+			assertTrue(metrics.getNodesPruned() > 0);
+			FinderFactory.finder(values, new BigDecimal("70.75")).find();
+			assertEquals(metrics.getStrategyCounts(), metrics.getLastStrategy()
+					+ "=1");
+			assertTrue(metrics.getLastStrategyReason().contains("budget"));
+
+			metrics.register();
+			final Object rows = ManagementFactory.getPlatformMBeanServer()
+					.getAttribute(new ObjectName(Metrics.OBJECT_NAME),
+							"RowsBuilt");
+			assertEquals(rows, metrics.getRowsBuilt());
+			final File file = temp.newFile();
+			metrics.writeStats(file.toPath());
+			final String stats = new String(Files.readAllBytes(file.toPath()),
+					"UTF-8");
+			assertTrue(stats.contains("\"nodesPruned\": "
+					+ metrics.getNodesPruned()));
+		} finally {
+			Metrics.setEnabled(false);
+			metrics.reset();
+		}
+	}
+
+	private static BigDecimal[] toBigDecimal(final long[] cents) {
+		final BigDecimal[] result = new BigDecimal[cents.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = Cents.toBigDecimal(cents[i]);
+		}
+		return result;
+	}
+
 }